@@ -0,0 +1,250 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+/**
+ * Measures the stored size of a payload, and the CPU time to encode and to
+ * decode it, when it is stored as a BSON sub-document and when it is stored
+ * with each {@code MongoCodec}.
+ * <p>
+ * The payload resembles an order with the given number of lines, whose field
+ * names are repeated in every line, as is typical of the payloads of managed
+ * items.  The time to encode covers the BSON encoding of the payload and its
+ * encoding with the codec, and the time to decode covers the decoding with
+ * the codec and the BSON decoding of the payload, as the listener performs
+ * them.  The sub-document is only encoded and decoded as BSON, which the
+ * driver does in any case.  Every encoding is warmed up before any of them
+ * is measured.
+ * <p>
+ * Usage: {@code MongoCodecBenchmark [lines] [iterations]}
+ * @author Melior
+ * @since 2.3
+ * @see MongoCodec
+ */
+public class MongoCodecBenchmark {
+
+    private static final DocumentCodec CODEC = new DocumentCodec();
+
+    /**
+     * Constructor.
+     */
+    private MongoCodecBenchmark() {
+
+        super();
+    }
+
+    /**
+     * Run benchmark.
+     * @param args The number of lines of the payload and the number of iterations
+     * @throws Exception if the benchmark fails
+     */
+    public static void main(
+        final String[] args) throws Exception {
+
+        int lines;
+        int iterations;
+        Document payload;
+        byte[] bson;
+
+        lines = (args.length > 0) ? Integer.parseInt(args[0]) : 20;
+        iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+
+        payload = payload(lines);
+
+        bson = encode(payload);
+
+        System.out.println("lines=" + lines + ", iterations=" + iterations);
+
+        for (int round = 0; round < 2; round++) {
+
+            measureEncode(payload, null, iterations);
+
+            measureDecode(bson, null, iterations);
+
+            for (MongoCodec codec : MongoCodec.values()) {
+
+                measureEncode(payload, codec, iterations);
+
+                measureDecode(codec.encode(bson), codec, iterations);
+            }
+
+        }
+
+        report("sub-document", bson.length, payload, null, iterations);
+
+        for (MongoCodec codec : MongoCodec.values()) {
+
+            report(codec.name(), codec.encode(bson).length, payload, codec, iterations);
+        }
+
+    }
+
+    /**
+     * Measure encoding and decoding of payload and print the results.
+     * @param name The name of the encoding
+     * @param size The stored size of the payload, specified in bytes
+     * @param payload The payload
+     * @param codec The codec, or null to measure the BSON encoding alone
+     * @param iterations The number of iterations
+     * @throws Exception if the benchmark fails
+     */
+    private static void report(
+        final String name,
+        final int size,
+        final Document payload,
+        final MongoCodec codec,
+        final int iterations) throws Exception {
+
+        byte[] encoded;
+        long encodeTime;
+        long decodeTime;
+
+        encoded = (codec == null) ? encode(payload) : codec.encode(encode(payload));
+
+        encodeTime = measureEncode(payload, codec, iterations);
+
+        decodeTime = measureDecode(encoded, codec, iterations);
+
+        System.out.println(String.format("%-14s size=%,8d bytes  encode=%,8.2f us  decode=%,8.2f us", name, size,
+            encodeTime / 1000.0 / iterations, decodeTime / 1000.0 / iterations));
+    }
+
+    /**
+     * Measure encoding of payload.
+     * @param payload The payload
+     * @param codec The codec, or null to measure the BSON encoding alone
+     * @param iterations The number of iterations
+     * @return The elapsed time, specified in nanoseconds
+     */
+    private static long measureEncode(
+        final Document payload,
+        final MongoCodec codec,
+        final int iterations) {
+
+        long start;
+        long length = 0;
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            length += (codec == null) ? encode(payload).length : codec.encode(encode(payload)).length;
+        }
+
+        if (length == 0) {
+            throw new IllegalStateException("Payload is empty.");
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Measure decoding of payload.
+     * @param encoded The encoded payload
+     * @param codec The codec, or null to measure the BSON decoding alone
+     * @param iterations The number of iterations
+     * @return The elapsed time, specified in nanoseconds
+     * @throws Exception if the payload is corrupt
+     */
+    private static long measureDecode(
+        final byte[] encoded,
+        final MongoCodec codec,
+        final int iterations) throws Exception {
+
+        long start;
+        long fields = 0;
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+            fields += decode((codec == null) ? encoded : codec.decode(encoded)).size();
+        }
+
+        if (fields == 0) {
+            throw new IllegalStateException("Payload is empty.");
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Encode payload as BSON.
+     * @param payload The payload
+     * @return The BSON encoding of the payload
+     */
+    private static byte[] encode(
+        final Document payload) {
+
+        BasicOutputBuffer buffer;
+
+        buffer = new BasicOutputBuffer();
+
+        CODEC.encode(new BsonBinaryWriter(buffer), payload, EncoderContext.builder().build());
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Decode payload from BSON.
+     * @param bytes The BSON encoding of the payload
+     * @return The payload
+     */
+    private static Document decode(
+        final byte[] bytes) {
+        return CODEC.decode(new BsonBinaryReader(ByteBuffer.wrap(bytes)), DecoderContext.builder().build());
+    }
+
+    /**
+     * Create payload which resembles an order.
+     * @param lines The number of lines of the order
+     * @return The payload
+     */
+    private static Document payload(
+        final int lines) {
+
+        List<Document> orderLines;
+
+        orderLines = new ArrayList<Document>(lines);
+
+        for (int i = 0; i < lines; i++) {
+
+            orderLines.add(new Document()
+                .append("lineNumber", i + 1)
+                .append("productCode", "PRD-" + (100000 + i * 37))
+                .append("productDescription", "Standard product description " + (i % 7))
+                .append("quantity", 1 + (i % 5))
+                .append("unitPrice", 19.99 + i)
+                .append("currencyCode", "EUR")
+                .append("fulfilmentStatus", "PENDING"));
+        }
+
+        return new Document()
+            .append("orderNumber", "ORD-2026-000123")
+            .append("customerNumber", "CUS-000456")
+            .append("customerName", "Example Customer")
+            .append("orderDate", new Date(1767225600000L))
+            .append("shippingAddress", new Document()
+                .append("street", "1 Example Street")
+                .append("city", "Example City")
+                .append("postalCode", "12345")
+                .append("countryCode", "DE"))
+            .append("orderLines", orderLines);
+    }
+
+}
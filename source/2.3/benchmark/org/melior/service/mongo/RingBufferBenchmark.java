@@ -0,0 +1,245 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.melior.util.collection.BoundedBlockingQueue;
+import org.melior.util.collection.Queue;
+
+/**
+ * Measures the throughput of the handoff of items from a {@code MongoListener}
+ * to its worker threads, through a {@code RingBuffer} with each of the wait
+ * strategies, and through the {@code BoundedBlockingQueue} which the ring
+ * buffer replaced.
+ * <p>
+ * One producer hands the given number of items to the given number of worker
+ * threads, through a handoff of the given capacity, which mirrors the listener
+ * with singleton processing and no work per item, so that only the cost of the
+ * handoff is measured.  Every handoff is run once to warm up, and is then
+ * measured over the given number of rounds.  The spin strategy needs a core
+ * for the producer and for each worker thread, otherwise it measures the
+ * scheduler rather than the handoff.
+ * <p>
+ * Usage: {@code RingBufferBenchmark [threads] [capacity] [items] [rounds]}
+ * @author Melior
+ * @since 2.3
+ * @see RingBuffer
+ */
+public class RingBufferBenchmark {
+
+    private static final Object POISON = new Object();
+
+    /**
+     * A handoff between the producer and the worker threads.
+     */
+    private interface Handoff {
+
+        /**
+         * Add element to handoff.  Waits while the handoff is full.
+         * @param element The element
+         * @throws InterruptedException if the thread has been interrupted
+         */
+        void add(
+            final Object element) throws InterruptedException;
+
+        /**
+         * Remove element from handoff.  Waits while the handoff is empty.
+         * @return The element
+         * @throws InterruptedException if the thread has been interrupted
+         */
+        Object remove() throws InterruptedException;
+    }
+
+    /**
+     * Constructor.
+     */
+    private RingBufferBenchmark() {
+
+        super();
+    }
+
+    /**
+     * Run benchmark.
+     * @param args The number of worker threads, the capacity, the number of items and the number of rounds
+     * @throws Exception if the benchmark fails
+     */
+    public static void main(
+        final String[] args) throws Exception {
+
+        int threads;
+        int capacity;
+        int items;
+        int rounds;
+
+        threads = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+        capacity = (args.length > 1) ? Integer.parseInt(args[1]) : threads;
+        items = (args.length > 2) ? Integer.parseInt(args[2]) : 2000000;
+        rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 5;
+
+        System.out.println("threads=" + threads + ", capacity=" + capacity + ", items=" + items + ", rounds=" + rounds);
+
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+
+            run("RingBuffer " + waitStrategy, threads, items, rounds, () -> ringBuffer(capacity, waitStrategy));
+        }
+
+        run("BoundedBlockingQueue", threads, items, rounds, () -> blockingQueue(capacity));
+    }
+
+    /**
+     * Warm up handoff and measure its throughput over the given number of rounds.
+     * @param name The name of the handoff
+     * @param threads The number of worker threads
+     * @param items The number of items to hand off in each round
+     * @param rounds The number of rounds
+     * @param factory The factory which creates a new handoff for each round
+     * @throws Exception if the benchmark fails
+     */
+    private static void run(
+        final String name,
+        final int threads,
+        final int items,
+        final int rounds,
+        final Supplier<Handoff> factory) throws Exception {
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        long duration;
+
+        measure(factory.get(), threads, items);
+
+        for (int round = 0; round < rounds; round++) {
+
+            duration = measure(factory.get(), threads, items);
+
+            best = Math.min(best, duration);
+            total += duration;
+        }
+
+        System.out.println(String.format("%-22s best=%,12.0f items/s  mean=%,12.0f items/s", name,
+            items * 1e9 / best, items * 1e9 * rounds / total));
+    }
+
+    /**
+     * Hand items off from one producer to the worker threads.
+     * @param handoff The handoff
+     * @param threads The number of worker threads
+     * @param items The number of items to hand off
+     * @return The elapsed time, specified in nanoseconds
+     * @throws Exception if the benchmark fails
+     */
+    private static long measure(
+        final Handoff handoff,
+        final int threads,
+        final int items) throws Exception {
+
+        Object item;
+        List<Thread> workers;
+        long start;
+
+        item = new Object();
+
+        workers = new ArrayList<Thread>(threads);
+
+        for (int i = 0; i < threads; i++) {
+
+            workers.add(new Thread(() -> {
+
+                try {
+
+                    while (handoff.remove() != POISON) {
+                    }
+
+                }
+                catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+
+            }));
+
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+
+        start = System.nanoTime();
+
+        for (int i = 0; i < items; i++) {
+            handoff.add(item);
+        }
+
+        for (int i = 0; i < threads; i++) {
+            handoff.add(POISON);
+        }
+
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.MINUTES.toMillis(1));
+        }
+
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Create handoff through ring buffer.
+     * @param capacity The capacity
+     * @param waitStrategy The wait strategy
+     * @return The handoff
+     */
+    private static Handoff ringBuffer(
+        final int capacity,
+        final WaitStrategy waitStrategy) {
+
+        RingBuffer<Object> ringBuffer;
+
+        ringBuffer = new RingBuffer<Object>(capacity, waitStrategy);
+
+        return new Handoff() {
+
+            public void add(
+                final Object element) throws InterruptedException {
+                ringBuffer.add(element);
+            }
+
+            public Object remove() throws InterruptedException {
+                return ringBuffer.remove();
+            }
+
+        };
+    }
+
+    /**
+     * Create handoff through bounded blocking queue.
+     * @param capacity The capacity
+     * @return The handoff
+     */
+    private static Handoff blockingQueue(
+        final int capacity) {
+
+        BoundedBlockingQueue<Object> queue;
+
+        queue = Queue.ofBoundedBlocking(capacity);
+
+        return new Handoff() {
+
+            public void add(
+                final Object element) throws InterruptedException {
+                queue.add(element);
+            }
+
+            public Object remove() throws InterruptedException {
+                return queue.remove();
+            }
+
+        };
+    }
+
+}
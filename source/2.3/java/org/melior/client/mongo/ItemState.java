@@ -16,7 +16,9 @@ package org.melior.client.mongo;
 public enum ItemState {
     NEW("N"),
     BUSY("B"),
-    ERROR("E");
+    ERROR("E"),
+    DONE("D"),
+    SCHEDULED("S");
 
     private String id;
 
@@ -7,14 +7,36 @@
         Service Harness
 */
 package org.melior.client.mongo;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.net.ssl.SSLContext;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
 import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
 import org.melior.client.exception.RemotingException;
 import org.melior.context.transaction.TransactionContext;
 import org.melior.logging.core.Logger;
@@ -22,22 +44,49 @@ import org.melior.logging.core.LoggerFactory;
 import org.melior.service.exception.ExceptionType;
 import org.melior.util.object.ObjectUtil;
 import org.melior.util.string.StringUtil;
+import org.melior.util.thread.DaemonThread;
+import org.melior.util.thread.ThreadControl;
 import org.melior.util.time.Timer;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
 import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoAction;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
 import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
 import org.springframework.data.mongodb.core.convert.DefaultMongoTypeMapper;
 import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
 import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
 import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.util.StringUtils;
+import com.mongodb.ClientSessionOptions;
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.MongoCredential;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -50,10 +99,54 @@ import com.mongodb.client.result.UpdateResult;
  * to the MongoDB server.  The client automatically converts any exception that
  * occurs during communication with the MongoDB server into a standard
  * {@code RemotingException}.
+ * <p>
+ * The client records the latency distribution of every operation, per collection
+ * and per operation, in the configured Micrometer registry.  The client also
+ * records the amount of time spent waiting for pooled connections, the utilization
+ * of the connection pool and the round-trip time of every command, so that pool
+ * exhaustion may be distinguished from server latency.
+ * <p>
+ * The client may be configured with near caches for collections which rarely
+ * change.  The results of queries on such collections are served from the
+ * near cache, which is invalidated by writes through the client and by the
+ * change stream on the collection.
+ * <p>
+ * If a deadline has been set for the current transaction with {@code MongoDeadline},
+ * then the client limits the execution time of queries and the write concern
+ * timeout of writes to the time that remains, and fails immediately once the
+ * deadline has passed.
+ * <p>
+ * The client may be configured to limit the concurrency of operations on each
+ * collection adaptively.  The limit is discovered from the observed round-trip
+ * times, so that callers are shed with a {@code RemotingException} when the
+ * MongoDB server slows down, rather than piling up on the connection pool.
+ * Connections may also be reserved for control-plane operations, which are
+ * then dispatched over a separate connection pool through {@link #control()}.
+ * <p>
+ * Profiles of write concern, read concern and read preference may be assigned
+ * to collections, or selected per call with {@code MongoProfile}, so that each
+ * operation pays only for the durability and consistency that it needs.
+ * <p>
+ * If a payload threshold has been configured, then the payloads of managed
+ * items which exceed it are stored in GridFS, and the managed items only
+ * hold references to them, so that claims and other operations which only
+ * concern the metadata of managed items remain small.  The payloads of managed
+ * items may also be stored in a compact binary encoding, optionally compressed,
+ * which is configured per collection with {@code MongoCodec}, and the metadata
+ * of managed items may be stored under short field keys with {@code MongoLayout}.
+ * <p>
+ * Managed items which have been processed may be moved to a history collection
+ * in bulk with {@link #archive(String, String, List)}.  The move is performed in
+ * a transaction if the deployment supports transactions.
+ * <p>
+ * Managed items may be scheduled to recur with {@link #schedule(String, String, Object, String)}.
+ * Only a single template document is stored for each schedule, and the
+ * {@code MongoListener} inserts each occurrence into the collection when it
+ * is due.
  * @author Melior
  * @since 2.3
  */
-public class MongoClient extends MongoClientConfig {
+public class MongoClient extends MongoClientConfig implements BeanNameAware {
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
@@ -63,20 +156,129 @@ public class MongoClient extends MongoClientConfig {
 
     private MongoTemplate mongoTemplate;
 
+    private MongoMetrics metrics;
+
+    private Map<String, MongoNearCache> cacheMap;
+
+    private Map<String, MongoLimiter> limiterMap;
+
+    private Map<String, MongoProfile> profileMap;
+
+    private Map<String, String> collectionProfileMap;
+
+    private Map<String, MongoTemplate> templateMap;
+
+    private Map<String, MongoCodec> codecMap;
+
+    private Map<String, MongoPartitioner> partitionerMap;
+
+    private Set<String> historyCollectionSet;
+
+    private boolean control;
+
+    private MongoClient controlClient;
+
+    private volatile Boolean transactions;
+
     /**
      * Constructor.
      * @param ssl The SSL indicator
      * @param sslContext The SSL context
+     * @param cacheMap The map of near caches
+     * @param profileMap The map of profiles
+     * @param collectionProfileMap The map of profile names per collection
+     * @param codecMap The map of payload codecs per collection
+     * @param partitionerMap The map of partitioners per collection
      */
     MongoClient(
         final boolean ssl,
-        final SSLContext sslContext) {
+        final SSLContext sslContext,
+        final Map<String, MongoNearCache> cacheMap,
+        final Map<String, MongoProfile> profileMap,
+        final Map<String, String> collectionProfileMap,
+        final Map<String, MongoCodec> codecMap,
+        final Map<String, MongoPartitioner> partitionerMap) {
 
         super();
 
         this.ssl = ssl;
 
         this.sslContext = sslContext;
+
+        this.metrics = new MongoMetrics("mongo");
+
+        this.cacheMap = cacheMap;
+
+        this.limiterMap = new ConcurrentHashMap<String, MongoLimiter>();
+
+        this.profileMap = profileMap;
+
+        this.collectionProfileMap = collectionProfileMap;
+
+        this.codecMap = codecMap;
+
+        this.partitionerMap = partitionerMap;
+
+        this.historyCollectionSet = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Set bean name.  The bean name is used to tag the metrics.
+     * @param beanName The bean name
+     */
+    public void setBeanName(
+        final String beanName) {
+        metrics.owner(beanName);
+    }
+
+    /**
+     * Get metrics.
+     * @return The metrics
+     */
+    public MongoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get number of partitions of collection.
+     * @param collectionName The collection name
+     * @return The number of partitions, or 0 if the collection is not partitioned
+     */
+    public int getPartitions(
+        final String collectionName) {
+
+        MongoPartitioner partitioner;
+
+        partitioner = partitionerMap.get(collectionName);
+
+        return (partitioner == null) ? 0 : partitioner.getPartitions();
+    }
+
+    /**
+     * Get control-plane client.  If connections have been reserved for
+     * control-plane operations, such as the claims, acknowledgements and
+     * heartbeats of a {@code MongoListener}, then the control-plane client
+     * dispatches its operations over a separate connection pool of that size,
+     * so that the operations keep a guaranteed share of connections when the
+     * application traffic exhausts the main connection pool.  The operations
+     * of the control-plane client are never shed by the concurrency limiter.
+     * @return The control-plane client, or this client if no connections have been reserved
+     */
+    public synchronized MongoClient control() {
+
+        if ((control == true) || (getReservedConnections() == 0)) {
+            return this;
+        }
+
+        if (controlClient == null) {
+
+            controlClient = new MongoClient(ssl, sslContext, new HashMap<String, MongoNearCache>(), profileMap, collectionProfileMap, codecMap, partitionerMap);
+            controlClient.configure(this);
+            controlClient.control = true;
+            controlClient.getMetrics().owner(metrics.getOwner() + ".control").registry(() -> metrics.getRegistry());
+        }
+
+        return controlClient;
     }
 
     /**
@@ -91,6 +293,14 @@ public class MongoClient extends MongoClientConfig {
         return this;
     }
 
+    /**
+     * Get size of connection pool.
+     * @return The number of reserved connections if this is a control-plane client, otherwise the maximum number of connections
+     */
+    private int getPoolSize() {
+        return (control == true) ? getReservedConnections() : getMaximumConnections();
+    }
+
     /**
      * Initialize client.
      * @throws RemotingException if unable to initialize the client
@@ -101,7 +311,9 @@ public class MongoClient extends MongoClientConfig {
         MongoClientSettings.Builder clientSettings;
         com.mongodb.client.MongoClient client;
         MongoDatabaseFactory databaseFactory;
+        MongoMappingContext mappingContext;
         MappingMongoConverter mappingConverter;
+        Map<String, MongoTemplate> profileTemplateMap;
 
         if (mongoTemplate != null) {
             return;
@@ -116,11 +328,13 @@ public class MongoClient extends MongoClientConfig {
         clientSettings = MongoClientSettings.builder()
             .applyConnectionString(connectionString)
             .applyToConnectionPoolSettings(builder -> builder
-                .minSize(getMinimumConnections())
-                .maxSize(getMaximumConnections())
+                .minSize(Math.min(getMinimumConnections(), getPoolSize()))
+                .maxSize(getPoolSize())
                 .maxWaitTime(getConnectionTimeout(), TimeUnit.MILLISECONDS)
                 .maxConnectionIdleTime(getInactivityTimeout(), TimeUnit.MILLISECONDS)
-                .maxConnectionLifeTime(getMaximumLifetime(), TimeUnit.MILLISECONDS))
+                .maxConnectionLifeTime(getMaximumLifetime(), TimeUnit.MILLISECONDS)
+                .addConnectionPoolListener(new MongoPoolMonitor(metrics, getPoolSize())))
+            .addCommandListener(new MongoCommandMonitor(metrics))
             .applyToSocketSettings(builder -> builder
                 .connectTimeout(getConnectionTimeout(), TimeUnit.MILLISECONDS)
                 .readTimeout(getRequestTimeout(), TimeUnit.MILLISECONDS));
@@ -143,10 +357,180 @@ public class MongoClient extends MongoClientConfig {
 
         databaseFactory = new SimpleMongoClientDatabaseFactory(client, getDatabase());
 
-        mappingConverter = new MappingMongoConverter(new DefaultDbRefResolver(databaseFactory), new MongoMappingContext());
+        mappingContext = new MongoMappingContext();
+        mappingContext.setFieldNamingStrategy(property -> (MongoItem.class.isAssignableFrom(property.getOwner().getType()) == true)
+            ? getLayout().field(property.getName()) : property.getName());
+
+        mappingConverter = new MappingMongoConverter(new DefaultDbRefResolver(databaseFactory), mappingContext) {
+
+            public <S> S read(
+                final Class<S> clazz,
+                final Bson bson) {
+
+                if ((MongoItem.class.isAssignableFrom(clazz) == true) && (bson instanceof Document)) {
+                    getLayout().normalize((Document) bson);
+                }
+
+                return super.read(clazz, bson);
+            }
+
+        };
         mappingConverter.setTypeMapper(new DefaultMongoTypeMapper(null));
 
-        mongoTemplate = new MongoTemplate(databaseFactory, mappingConverter);
+        profileTemplateMap = new HashMap<String, MongoTemplate>();
+
+        for (Map.Entry<String, MongoProfile> entry : profileMap.entrySet()) {
+
+            profileTemplateMap.put(entry.getKey(), createTemplate(getProfileFactory(client, entry.getValue()), mappingConverter));
+        }
+
+        templateMap = profileTemplateMap;
+
+        mongoTemplate = createTemplate(databaseFactory, mappingConverter);
+
+        for (MongoNearCache cache : cacheMap.values()) {
+
+            metrics.gauge("melior.mongo.cache.size", cache.getCollectionName(), () -> cache.size());
+
+            DaemonThread.create(() -> watch(cache));
+        }
+
+    }
+
+    /**
+     * Create template.
+     * @param databaseFactory The database factory
+     * @param mappingConverter The mapping converter
+     * @return The template
+     */
+    private MongoTemplate createTemplate(
+        final MongoDatabaseFactory databaseFactory,
+        final MappingMongoConverter mappingConverter) {
+
+        MongoTemplate template;
+
+        template = new MongoTemplate(databaseFactory, mappingConverter);
+        template.setWriteConcernResolver(action -> resolveWriteConcern(template, action));
+
+        return template;
+    }
+
+    /**
+     * Get database factory which applies the settings of a profile to the database.
+     * @param client The MongoDB client
+     * @param profile The profile
+     * @return The database factory
+     */
+    private MongoDatabaseFactory getProfileFactory(
+        final com.mongodb.client.MongoClient client,
+        final MongoProfile profile) {
+
+        return new SimpleMongoClientDatabaseFactory(client, getDatabase()) {
+
+            protected MongoDatabase doGetMongoDatabase(
+                final String dbName) {
+
+                return profile.apply(super.doGetMongoDatabase(dbName));
+            }
+
+        };
+    }
+
+    /**
+     * Get template for operation on collection.  Uses the profile which has been
+     * selected for the current call, if any, otherwise the profile of the collection.
+     * @param collectionName The collection name
+     * @return The template
+     * @throws RemotingException if the profile has not been registered
+     */
+    private MongoTemplate getTemplate(
+        final String collectionName) throws RemotingException {
+
+        String profileName;
+        MongoTemplate template;
+
+        profileName = getProfileName(collectionName);
+
+        if (profileName == null) {
+            return mongoTemplate;
+        }
+
+        template = templateMap.get(profileName);
+
+        if (template == null) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Profile [" + profileName + "] has not been registered.");
+        }
+
+        return template;
+    }
+
+    /**
+     * Get name of profile for operation on collection.
+     * @param collectionName The collection name
+     * @return The profile name, or null if no profile applies
+     */
+    private String getProfileName(
+        final String collectionName) {
+        return ObjectUtil.coalesce(MongoProfile.current(), collectionProfileMap.get(collectionName));
+    }
+
+    /**
+     * Watch collection for changes and invalidate the near cache of the
+     * collection when a change occurs.  The near cache is also invalidated
+     * when the change stream is opened or fails, as changes may have been
+     * missed while the change stream was not open.  If the server does not
+     * support change streams, as is the case for standalone servers, then
+     * the collection is no longer watched, and the near cache relies on the
+     * time to live of the cached results for changes made by other clients.
+     * @param cache The near cache
+     */
+    private void watch(
+        final MongoNearCache cache) {
+
+        String methodName = "watch";
+        MongoCursor<ChangeStreamDocument<Document>> cursor;
+
+        while (true) {
+
+            try {
+                logger.debug(methodName, "Watch collection [", cache.getCollectionName(), "] for changes.");
+
+                cursor = mongoTemplate.getCollection(cache.getCollectionName()).watch().iterator();
+
+                try {
+
+                    cache.invalidate();
+
+                    while (cursor.hasNext() == true) {
+
+                        cursor.next();
+
+                        cache.invalidate();
+                    }
+
+                }
+                finally {
+
+                    cursor.close();
+                }
+
+            }
+            catch (Throwable exception) {
+
+                if (hasErrorCode(exception, 40573) == true) {
+                    logger.error(methodName, "Change streams are not supported.  Near cache of collection [", cache.getCollectionName(), "] relies on time to live.");
+
+                    return;
+                }
+
+                logger.error(methodName, "Failed to watch collection [", cache.getCollectionName(), "] for changes: ", exception.getMessage(), exception);
+            }
+
+            cache.invalidate();
+
+            ThreadControl.wait(cache, 5, TimeUnit.SECONDS);
+        }
+
     }
 
     /**
@@ -159,9 +543,90 @@ public class MongoClient extends MongoClientConfig {
         final String collectionName,
         final Document indexDefinition) throws RemotingException {
 
+        setIndex(collectionName, indexDefinition, null);
+    }
+
+    /**
+     * Set partial index on collection.  Only the documents which match the
+     * filter are indexed, which keeps the index small when the queries only
+     * concern a small subset of the documents.
+     * @param collectionName The collection name
+     * @param indexDefinition The index definition
+     * @param partialFilter The filter of documents to index, or null to index all documents
+     * @throws RemotingException if unable to set the index
+     */
+    public void setIndex(
+        final String collectionName,
+        final Document indexDefinition,
+        final Document partialFilter) throws RemotingException {
+
+        CompoundIndexDefinition index;
+
+        initialize();
+
+        index = new CompoundIndexDefinition(indexDefinition);
+
+        if (partialFilter != null) {
+            index.partial(PartialIndexFilter.of(partialFilter));
+        }
+
         try {
 
-            mongoTemplate.indexOps(collectionName).ensureIndex(new CompoundIndexDefinition(indexDefinition));
+            mongoTemplate.indexOps(collectionName).ensureIndex(index);
+        }
+        catch (Exception exception) {
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to set index: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Drop index from collection, if it exists.
+     * @param collectionName The collection name
+     * @param indexName The index name
+     * @throws RemotingException if unable to drop the index
+     */
+    public void dropIndex(
+        final String collectionName,
+        final String indexName) throws RemotingException {
+
+        initialize();
+
+        try {
+
+            mongoTemplate.indexOps(collectionName).dropIndex(indexName);
+        }
+        catch (Exception exception) {
+
+            if ((hasErrorCode(exception, 27) == true) || (hasErrorCode(exception, 26) == true)) {
+                return;
+            }
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to drop index: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Set time-to-live index on collection.  Documents are removed by the
+     * server once the date in the indexed field is older than the expiry.
+     * Documents without a date in the indexed field are never removed.
+     * @param collectionName The collection name
+     * @param field The name of the field which holds the date
+     * @param expiry The expiry, specified in seconds
+     * @throws RemotingException if unable to set the index
+     */
+    public void setExpiryIndex(
+        final String collectionName,
+        final String field,
+        final long expiry) throws RemotingException {
+
+        initialize();
+
+        try {
+
+            mongoTemplate.indexOps(collectionName).ensureIndex(new Index().on(field, Sort.Direction.ASC).expire(expiry));
         }
         catch (Exception exception) {
 
@@ -183,27 +648,38 @@ public class MongoClient extends MongoClientConfig {
 
         String methodName = "insert";
         Timer timer;
+        MongoTemplate template;
         long duration;
 
         initialize();
 
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
         logger.debug(methodName, "Insert 1 item in collection [", collectionName, "].");
 
+        acquire(collectionName);
+
         timer = Timer.ofNanos().start();
 
         try {
 
-            mongoTemplate.insert(item, collectionName);
+            template.insert(item, collectionName);
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Item inserted successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Item insert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
@@ -212,9 +688,15 @@ public class MongoClient extends MongoClientConfig {
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Item insert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to insert item: " + exception.getMessage(), exception);
         }
+        finally {
+
+            invalidate(collectionName);
+        }
 
     }
 
@@ -229,7 +711,7 @@ public class MongoClient extends MongoClientConfig {
         final String collectionName,
         final T item) throws RemotingException {
 
-        insert(collectionName, new MongoItem<T>(TransactionContext.get(), item, ItemState.NEW.getId()));
+        insert(collectionName, manage(collectionName, item, null));
     }
 
     /**
@@ -245,7 +727,99 @@ public class MongoClient extends MongoClientConfig {
         final T item,
         final Duration delay) throws RemotingException {
 
-        insert(collectionName, new MongoItem<T>(TransactionContext.get(), item, ItemState.NEW.getId(), delay));
+        insert(collectionName, manage(collectionName, item, delay));
+    }
+
+    /**
+     * Schedule managed item to recur in collection.  A name is generated for
+     * the schedule.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param item The item
+     * @param schedule The cron expression or the interval in ISO-8601 notation
+     * @return The name of the schedule
+     * @throws RemotingException if unable to schedule the item
+     * @see #schedule(String, String, Object, String)
+     */
+    public <T> String schedule(
+        final String collectionName,
+        final T item,
+        final String schedule) throws RemotingException {
+
+        String scheduleName;
+
+        scheduleName = UUID.randomUUID().toString();
+
+        schedule(collectionName, scheduleName, item, schedule);
+
+        return scheduleName;
+    }
+
+    /**
+     * Schedule managed item to recur in collection.  A single template document
+     * is stored for the schedule, which holds the item and the time of the next
+     * occurrence.  The listener of the collection inserts each occurrence into
+     * the collection as a managed item when it is due, and the occurrence is then
+     * processed like any other delayed item.  If a schedule with the same name
+     * already exists in the collection, then it is replaced.  Payloads of scheduled
+     * items are never offloaded, as they are shared by all the occurrences.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param scheduleName The name of the schedule
+     * @param item The item
+     * @param schedule The cron expression or the interval in ISO-8601 notation
+     * @throws RemotingException if unable to schedule the item
+     */
+    public <T> void schedule(
+        final String collectionName,
+        final String scheduleName,
+        final T item,
+        final String schedule) throws RemotingException {
+
+        long now;
+        long next;
+        MongoItem<T> mongoItem;
+
+        now = System.currentTimeMillis();
+
+        try {
+
+            next = MongoSchedule.next(schedule, now, now);
+        }
+        catch (IllegalArgumentException exception) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Invalid schedule [" + schedule + "]: " + exception.getMessage(), exception);
+        }
+
+        mongoItem = manage(collectionName, item, Duration.ofMillis(Math.max(0, next - now)), false);
+        mongoItem.setId(getScheduleId(scheduleName));
+        mongoItem.setState(ItemState.SCHEDULED.getId());
+        mongoItem.setSchedule(schedule);
+
+        update(collectionName, mongoItem);
+    }
+
+    /**
+     * Remove schedule from collection.  Occurrences which have already been
+     * inserted into the collection are not affected.
+     * @param collectionName The collection name
+     * @param scheduleName The name of the schedule
+     * @throws RemotingException if unable to remove the schedule
+     */
+    public void unschedule(
+        final String collectionName,
+        final String scheduleName) throws RemotingException {
+
+        delete(collectionName, Query.query(Criteria.where("_id").is(getScheduleId(scheduleName))));
+    }
+
+    /**
+     * Get identifier of template document of schedule.
+     * @param scheduleName The name of the schedule
+     * @return The identifier
+     */
+    private String getScheduleId(
+        final String scheduleName) {
+        return "schedule-" + scheduleName;
     }
 
     /**
@@ -276,27 +850,38 @@ public class MongoClient extends MongoClientConfig {
 
         String methodName = "insert";
         Timer timer;
+        MongoTemplate template;
         long duration;
 
         initialize();
 
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
         logger.debug(methodName, "Insert ", items.size(), " items in collection [", collectionName, "].");
+
+        acquire(collectionName);
 
         timer = Timer.ofNanos().start();
 
         try {
 
-            mongoTemplate.insert(items, collectionName);
+            template.insert(items, collectionName);
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Items inserted successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Items insert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
@@ -305,9 +890,15 @@ public class MongoClient extends MongoClientConfig {
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Items insert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to insert items: " + exception.getMessage(), exception);
         }
+        finally {
+
+            invalidate(collectionName);
+        }
 
     }
 
@@ -327,7 +918,7 @@ public class MongoClient extends MongoClientConfig {
         managedItems = new ArrayList<MongoItem<T>>(items.size());
 
         for (T item : items) {
-            managedItems.add(new MongoItem<T>(TransactionContext.get(), item, ItemState.NEW.getId()));
+            managedItems.add(manage(collectionName, item, null));
         }
 
         insert(collectionName, managedItems);
@@ -351,46 +942,903 @@ public class MongoClient extends MongoClientConfig {
         managedItems = new ArrayList<MongoItem<T>>(items.size());
 
         for (T item : items) {
-            managedItems.add(new MongoItem<T>(TransactionContext.get(), item, ItemState.NEW.getId(), delay));
+            managedItems.add(manage(collectionName, item, delay));
         }
 
         insert(collectionName, managedItems);
     }
 
     /**
-     * Update item in collection.
+     * Wrap item in managed item.  If the collection is partitioned, then the
+     * managed item is assigned to a partition.  If a codec has been configured for the
+     * collection, then the item is stored in encoded form.  If a payload
+     * threshold has been configured and the encoded item exceeds it, then
+     * the item is stored in GridFS and the managed item only holds a
+     * reference to it.
      * @param <T> The type
      * @param collectionName The collection name
      * @param item The item
-     * @throws RemotingException if unable to update the item
+     * @param delay The delay, or null if the item is eligible immediately
+     * @return The managed item
+     * @throws RemotingException if unable to store the payload
      */
-    public <T> void update(
+    private <T> MongoItem<T> manage(
         final String collectionName,
-        final T item) throws RemotingException {
-
-        String methodName = "update";
-        Timer timer;
-        long duration;
-
-        initialize();
+        final T item,
+        final Duration delay) throws RemotingException {
 
-        logger.debug(methodName, "Update 1 item in collection [", collectionName, "].");
-
-        timer = Timer.ofNanos().start();
+        return manage(collectionName, item, delay, true);
+    }
 
-        try {
-
-            mongoTemplate.save(item, collectionName);
+    /**
+     * Wrap item in managed item.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param item The item
+     * @param delay The delay, or null if the item is eligible immediately
+     * @param offload true if the item may be stored in GridFS, false otherwise
+     * @return The managed item
+     * @throws RemotingException if unable to store the payload
+     * @see #manage(String, Object, Duration)
+     */
+    private <T> MongoItem<T> manage(
+        final String collectionName,
+        final T item,
+        final Duration delay,
+        final boolean offload) throws RemotingException {
+
+        MongoCodec codec;
+        MongoPartitioner partitioner;
+        byte[] bytes = null;
+        String payload = null;
+        MongoItem<T> mongoItem;
+
+        codec = codecMap.get(collectionName);
+
+        if ((item != null) && ((codec != null) || ((offload == true) && (getPayloadThreshold() > 0)))) {
+
+            bytes = encode(collectionName, item);
+
+            if (codec != null) {
+                bytes = codec.encode(bytes);
+            }
+
+            if ((offload == true) && (getPayloadThreshold() > 0) && (bytes.length > getPayloadThreshold())) {
+                payload = offload(collectionName, bytes);
+            }
+            else if (codec == null) {
+                bytes = null;
+            }
+
+        }
+
+        mongoItem = (delay == null)
+            ? new MongoItem<T>(TransactionContext.get(), (bytes == null) ? item : null, ItemState.NEW.getId())
+            : new MongoItem<T>(TransactionContext.get(), (bytes == null) ? item : null, ItemState.NEW.getId(), delay);
+
+        mongoItem.setPayload(payload);
+
+        if (payload == null) {
+            mongoItem.setBinary(bytes);
+        }
+        else {
+            mongoItem.setPayloadSize(bytes.length);
+        }
+
+        if ((bytes != null) && (codec != null)) {
+            mongoItem.setCodec(codec.name());
+        }
+
+        partitioner = partitionerMap.get(collectionName);
+
+        if (partitioner != null) {
+            mongoItem.setPartition(partitioner.partition(item));
+        }
+
+        return mongoItem;
+    }
+
+    /**
+     * Encode item as BSON.
+     * @param collectionName The collection name
+     * @param item The item
+     * @return The BSON encoding of the item
+     * @throws RemotingException if unable to encode the item
+     */
+    private byte[] encode(
+        final String collectionName,
+        final Object item) throws RemotingException {
+
+        MongoTemplate template;
+        Document document;
+        BasicOutputBuffer buffer;
+
+        initialize();
+
+        template = getTemplate(collectionName);
+
+        document = new Document();
+        template.getConverter().write(item, document);
+
+        buffer = new BasicOutputBuffer();
+        template.getDb().getCodecRegistry().get(Document.class).encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Store payload in GridFS.
+     * @param collectionName The collection name
+     * @param bytes The encoded payload
+     * @return The reference to the payload
+     * @throws RemotingException if unable to store the payload
+     */
+    private String offload(
+        final String collectionName,
+        final byte[] bytes) throws RemotingException {
+
+        String methodName = "offload";
+        Timer timer;
+        ObjectId payload;
+
+        logger.debug(methodName, "Store payload of ", bytes.length, " bytes in GridFS for collection [", collectionName, "].");
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            payload = getBucket(getTemplate(collectionName), collectionName).uploadFromStream(collectionName, new ByteArrayInputStream(bytes));
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to store payload: " + exception.getMessage(), exception);
+        }
+
+        return payload.toHexString();
+    }
+
+    /**
+     * Load payload of managed item.  A payload which is stored in GridFS is
+     * streamed from GridFS only when it is requested, and a payload which is
+     * stored in encoded form is only decoded when it is requested, so that
+     * operations which only concern the metadata of managed items do not pay
+     * for large payloads.
+     * @param collectionName The collection name
+     * @param mongoItem The managed item
+     * @return The payload as a document, or the item itself if the payload is stored as a sub-document of the item
+     * @throws RemotingException if unable to load the payload
+     */
+    public Object loadPayload(
+        final String collectionName,
+        final MongoItem<?> mongoItem) throws RemotingException {
+
+        String methodName = "loadPayload";
+        Timer timer;
+        MongoTemplate template;
+        ByteArrayOutputStream outputStream;
+        byte[] bytes;
+
+        if ((mongoItem.getPayload() == null) && (mongoItem.getBinary() == null)) {
+            return mongoItem.getItem();
+        }
+
+        initialize();
+
+        template = getTemplate(collectionName);
+
+        if (mongoItem.getPayload() == null) {
+            return decode(template, mongoItem, mongoItem.getBinary());
+        }
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            outputStream = new ByteArrayOutputStream();
+
+            getBucket(template, collectionName).downloadToStream(new ObjectId(mongoItem.getPayload()), outputStream);
+
+            bytes = outputStream.toByteArray();
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to load payload: " + exception.getMessage(), exception);
+        }
+
+        logger.debug(methodName, "Loaded payload of ", bytes.length, " bytes from GridFS for collection [", collectionName, "].");
+
+        return decode(template, mongoItem, bytes);
+    }
+
+    /**
+     * Decode payload of managed item.  The payload is decompressed with the
+     * codec of the item, if any, and is then decoded from BSON.  The payload
+     * is decoded locally, so it does not count against the concurrency limiter.
+     * @param template The template
+     * @param mongoItem The managed item
+     * @param bytes The encoded payload
+     * @return The payload as a document
+     * @throws RemotingException if unable to decode the payload
+     */
+    private Document decode(
+        final MongoTemplate template,
+        final MongoItem<?> mongoItem,
+        final byte[] bytes) throws RemotingException {
+
+        byte[] decoded;
+        Document document;
+
+        try {
+
+            decoded = bytes;
+
+            if (mongoItem.getCodec() != null) {
+                decoded = MongoCodec.valueOf(mongoItem.getCodec()).decode(decoded);
+            }
+
+            document = template.getDb().getCodecRegistry().get(Document.class).decode(
+                new BsonBinaryReader(ByteBuffer.wrap(decoded)), DecoderContext.builder().build());
+        }
+        catch (Exception exception) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Failed to decode payload: " + exception.getMessage(), exception);
+        }
+
+        return document;
+    }
+
+    /**
+     * Delete payloads of managed items from GridFS.  Nothing is done if none of
+     * the items has a payload in GridFS.
+     * @param collectionName The collection name
+     * @param mongoItems The list of managed items
+     * @throws RemotingException if unable to delete the payloads
+     */
+    public void deletePayloads(
+        final String collectionName,
+        final List<? extends MongoItem<?>> mongoItems) throws RemotingException {
+
+        String methodName = "deletePayloads";
+        Timer timer;
+        GridFSBucket bucket;
+
+        if (mongoItems.stream().noneMatch(mongoItem -> mongoItem.getPayload() != null)) {
+            return;
+        }
+
+        initialize();
+
+        bucket = getBucket(getTemplate(collectionName), collectionName);
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            for (MongoItem<?> mongoItem : mongoItems) {
+
+                if (mongoItem.getPayload() != null) {
+                    bucket.delete(new ObjectId(mongoItem.getPayload()));
+                }
+
+            }
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to delete payloads: " + exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Move managed items from collection to history collection.  The items are
+     * marked as done and inserted in the history collection with a single
+     * {@code insertMany}, and are then deleted from the collection with a single
+     * {@code deleteMany}.  If the deployment supports transactions, then both
+     * writes are performed in one transaction.  Otherwise the items are inserted
+     * in the history collection before they are deleted from the collection, and
+     * items which have already been archived are skipped, so that an archive which
+     * was interrupted may simply be repeated.
+     * <p>
+     * Payloads are not archived.  The archived items do not reference payloads
+     * which were stored in GridFS, and the payloads are deleted once the items
+     * have been moved.  Only items which are marked as done in the collection
+     * are deleted from it, so that items which have been claimed again in the
+     * meantime are left alone.
+     * @param collectionName The collection name
+     * @param historyCollectionName The history collection name
+     * @param mongoItems The list of managed items
+     * @throws RemotingException if unable to archive the items
+     */
+    public void archive(
+        final String collectionName,
+        final String historyCollectionName,
+        final List<? extends MongoItem<?>> mongoItems) throws RemotingException {
+
+        String methodName = "archive";
+        Timer timer;
+        MongoTemplate template;
+        Date now;
+        List<String> ids;
+        List<String> payloads;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Archive ", mongoItems.size(), " items from collection [", collectionName, "] to collection [", historyCollectionName, "].");
+
+        now = new Date();
+
+        ids = new ArrayList<String>(mongoItems.size());
+
+        payloads = new ArrayList<String>();
+
+        for (MongoItem<?> mongoItem : mongoItems) {
+
+            if (mongoItem.getPayload() != null) {
+                payloads.add(mongoItem.getPayload());
+            }
+
+            mongoItem.setState(ItemState.DONE.getId());
+            mongoItem.setSession(null);
+            mongoItem.setCompleted(now);
+            mongoItem.setPayload(null);
+            mongoItem.setPayloadSize(null);
+
+            ids.add(mongoItem.getId());
+        }
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            if (Boolean.FALSE.equals(transactions) == false) {
+
+                try {
+
+                    archiveInTransaction(template, collectionName, historyCollectionName, mongoItems, ids);
+
+                    transactions = Boolean.TRUE;
+                }
+                catch (RuntimeException exception) {
+
+                    if ((transactions != null) || (isTransactionUnsupported(exception) == false)) {
+                        throw exception;
+                    }
+
+                    logger.debug(methodName, "Transactions are not supported.  Archive items without transaction.");
+
+                    transactions = Boolean.FALSE;
+
+                    archive(template, collectionName, historyCollectionName, mongoItems, ids);
+                }
+
+            }
+            else {
+
+                archive(template, collectionName, historyCollectionName, mongoItems, ids);
+            }
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, mongoItems.size(), " items archived successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items archive failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items archive failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to archive items: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
+        }
+
+        if (payloads.size() > 0) {
+            deletePayloads(template, collectionName, payloads);
+        }
+
+    }
+
+    /**
+     * Delete payloads of archived items from GridFS.  The items have already
+     * been archived, so a failure only leaves the payloads behind, and is logged
+     * rather than thrown.
+     * @param template The template
+     * @param collectionName The collection name
+     * @param payloads The list of payload references
+     */
+    private void deletePayloads(
+        final MongoTemplate template,
+        final String collectionName,
+        final List<String> payloads) {
+
+        String methodName = "deletePayloads";
+        GridFSBucket bucket;
+
+        try {
+
+            bucket = getBucket(template, collectionName);
+
+            for (String payload : payloads) {
+                bucket.delete(new ObjectId(payload));
+            }
+
+        }
+        catch (Exception exception) {
+            logger.error(methodName, "Failed to delete payloads of archived items: ", exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Move managed items from collection to history collection in a transaction.
+     * The history collection is created before the transaction is started, as
+     * collections cannot be created in a transaction before MongoDB 4.4.
+     * @param template The template
+     * @param collectionName The collection name
+     * @param historyCollectionName The history collection name
+     * @param mongoItems The list of managed items
+     * @param ids The list of item identifiers
+     */
+    private void archiveInTransaction(
+        final MongoTemplate template,
+        final String collectionName,
+        final String historyCollectionName,
+        final List<? extends MongoItem<?>> mongoItems,
+        final List<String> ids) {
+
+        ClientSession clientSession;
+
+        createHistoryCollection(template, historyCollectionName);
+
+        clientSession = template.getMongoDatabaseFactory().getSession(ClientSessionOptions.builder().causallyConsistent(true).build());
+
+        try {
+
+            clientSession.withTransaction(() -> {
+
+                MongoTemplate sessionTemplate = template.withSession(clientSession);
+
+                sessionTemplate.insert(mongoItems, historyCollectionName);
+
+                sessionTemplate.remove(Query.query(Criteria.where("").andOperator(
+                    Criteria.where("_id").in(ids),
+                    Criteria.where(getLayout().field("state")).is(ItemState.DONE.getId()))), collectionName);
+
+                return null;
+            });
+
+        }
+        finally {
+
+            clientSession.close();
+        }
+
+    }
+
+    /**
+     * Create history collection, if it does not exist yet.  History collections
+     * which are known to exist are remembered, so that the existence of each
+     * history collection is only checked once.
+     * @param template The template
+     * @param historyCollectionName The history collection name
+     */
+    private void createHistoryCollection(
+        final MongoTemplate template,
+        final String historyCollectionName) {
+
+        if (historyCollectionSet.contains(historyCollectionName) == true) {
+            return;
+        }
+
+        if (template.collectionExists(historyCollectionName) == false) {
+
+            try {
+
+                template.createCollection(historyCollectionName);
+            }
+            catch (RuntimeException exception) {
+
+                if (hasErrorCode(exception, 48) == false) {
+                    throw exception;
+                }
+
+            }
+
+        }
+
+        historyCollectionSet.add(historyCollectionName);
+    }
+
+    /**
+     * Move managed items from collection to history collection without a transaction.
+     * Items which already exist in the history collection are skipped.
+     * @param template The template
+     * @param collectionName The collection name
+     * @param historyCollectionName The history collection name
+     * @param mongoItems The list of managed items
+     * @param ids The list of item identifiers
+     */
+    private void archive(
+        final MongoTemplate template,
+        final String collectionName,
+        final String historyCollectionName,
+        final List<? extends MongoItem<?>> mongoItems,
+        final List<String> ids) {
+
+        try {
+
+            template.bulkOps(BulkMode.UNORDERED, historyCollectionName).insert(mongoItems).execute();
+        }
+        catch (BulkOperationException exception) {
+
+            for (BulkWriteError error : exception.getErrors()) {
+
+                if (error.getCode() != 11000) {
+                    throw exception;
+                }
+
+            }
+
+        }
+
+        template.remove(Query.query(Criteria.where("").andOperator(
+            Criteria.where("_id").in(ids),
+            Criteria.where(getLayout().field("state")).is(ItemState.DONE.getId()))), collectionName);
+    }
+
+    /**
+     * Determine whether exception indicates that the deployment does not support
+     * transactions, which is the case for standalone servers.
+     * @param exception The exception
+     * @return true if transactions are not supported, false otherwise
+     */
+    private boolean isTransactionUnsupported(
+        final Throwable exception) {
+        return hasErrorCode(exception, 20);
+    }
+
+    /**
+     * Determine whether exception, or any of its causes, carries the given
+     * MongoDB error code.
+     * @param exception The exception
+     * @param code The error code
+     * @return true if the error code is found, false otherwise
+     */
+    private boolean hasErrorCode(
+        final Throwable exception,
+        final int code) {
+
+        Throwable cause;
+
+        for (cause = exception; cause != null; cause = cause.getCause()) {
+
+            if ((cause instanceof MongoException) && (((MongoException) cause).getCode() == code)) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Get GridFS bucket in which the payloads of a collection are stored.
+     * @param template The template
+     * @param collectionName The collection name
+     * @return The GridFS bucket
+     */
+    private GridFSBucket getBucket(
+        final MongoTemplate template,
+        final String collectionName) {
+
+        return GridFSBuckets.create(template.getDb(), collectionName + ".payload");
+    }
+
+    /**
+     * Update item in collection.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param item The item
+     * @throws RemotingException if unable to update the item
+     */
+    public <T> void update(
+        final String collectionName,
+        final T item) throws RemotingException {
+
+        String methodName = "update";
+        Timer timer;
+        MongoTemplate template;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Update 1 item in collection [", collectionName, "].");
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            template.save(item, collectionName);
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item updated successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item update failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item update failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to update item: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
+        }
+
+    }
+
+    /**
+     * Update items in collection.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param update The update to apply
+     * @return The number of items which matched the query
+     * @throws RemotingException if unable to update items
+     */
+    public <T> long update(
+        final String collectionName,
+        final Query query,
+        final Update update) throws RemotingException {
+
+        String methodName = "update";
+        Timer timer;
+        MongoTemplate template;
+        UpdateResult updateResult;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Update items in collection [", collectionName, "]. ", trim(update.getUpdateObject()));
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            updateResult = template.updateMulti(query, update, collectionName);
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, updateResult.getModifiedCount(), " items updated successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+
+            return updateResult.getMatchedCount();
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items update failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items update failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to update items: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
+        }
+
+    }
+
+    /**
+     * Update item in collection, or insert it if no item matches the query.
+     * If the insert conflicts with an existing item which does not match the
+     * query, then the duplicate key violation is reported as a failed upsert
+     * rather than as an exception, which allows the upsert to be used as a
+     * conditional claim on a well-known document.
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param update The update to apply
+     * @return true if an item was updated or inserted, false otherwise
+     * @throws RemotingException if unable to upsert the item
+     */
+    public boolean upsert(
+        final String collectionName,
+        final Query query,
+        final Update update) throws RemotingException {
+
+        String methodName = "upsert";
+        Timer timer;
+        MongoTemplate template;
+        UpdateResult updateResult;
+        boolean upserted;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Upsert item in collection [", collectionName, "]. ", trim(update.getUpdateObject()));
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            updateResult = template.upsert(query, update, collectionName);
+
+            upserted = (updateResult.getMatchedCount() > 0) || (updateResult.getUpsertedId() != null);
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item upserted successfully.  Upserted = ", upserted, ".  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+
+            return upserted;
+        }
+        catch (DuplicateKeyException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item not upserted, as it conflicts with an existing item.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+
+            return false;
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item upsert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Item upsert failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to upsert item: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
+        }
+
+    }
+
+    /**
+     * Delete item from collection.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param item The item
+     * @throws RemotingException if unable to delete the item
+     */
+    public <T> void delete(
+        final String collectionName,
+        final T item) throws RemotingException {
+
+        String methodName = "delete";
+        Timer timer;
+        MongoTemplate template;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Delete 1 item in collection [", collectionName, "].");
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            template.remove(item, collectionName);
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
-            logger.debug(methodName, "Item updated successfully.  Duration = ", duration, " ms.");
+            logger.debug(methodName, "Item deleted successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
-            logger.debug(methodName, "Item update failed.  Duration = ", duration, " ms.");
+            logger.debug(methodName, "Item delete failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
@@ -398,207 +1846,561 @@ public class MongoClient extends MongoClientConfig {
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
-            logger.debug(methodName, "Item update failed.  Duration = ", duration, " ms.");
+            logger.debug(methodName, "Item delete failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to update item: " + exception.getMessage(), exception);
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to delete item: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
         }
 
     }
 
     /**
-     * Update items in collection.
+     * Delete items from collection.
      * @param <T> The type
      * @param collectionName The collection name
      * @param query The query to use
-     * @param update The update to apply
-     * @throws RemotingException if unable to update items
+     * @return The number of items deleted
+     * @throws RemotingException if unable to delete the items
      */
-    public <T> void update(
+    public <T> long delete(
+        final String collectionName,
+        final Query query) throws RemotingException {
+
+        String methodName = "delete";
+        Timer timer;
+        MongoTemplate template;
+        DeleteResult deleteResult;
+        long duration;
+
+        initialize();
+
+        checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Delete items in collection [", collectionName, "].");
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            deleteResult = template.remove(query, collectionName);
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, deleteResult.getDeletedCount(), " items deleted successfully.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+
+            return deleteResult.getDeletedCount();
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items delete failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items delete failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to delete items: " + exception.getMessage(), exception);
+        }
+        finally {
+
+            invalidate(collectionName);
+        }
+
+    }
+
+    /**
+     * Find items in collection.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param entityClass The result entity class
+     * @return The list of items
+     * @throws RemotingException if unable to find items
+     */
+    public <T> List<T> find(
         final String collectionName,
         final Query query,
-        final Update update) throws RemotingException {
+        final Class<T> entityClass) throws RemotingException {
 
-        String methodName = "update";
+        String methodName = "find";
         Timer timer;
-        UpdateResult updateResult;
+        MongoTemplate template;
+        List<T> items;
         long duration;
+        MongoNearCache cache;
+        String profileName;
+        long generation = 0;
+        long remaining;
+
+        initialize();
+
+        remaining = checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        profileName = getProfileName(collectionName);
+
+        cache = cacheMap.get(collectionName);
+
+        if (cache != null) {
+
+            items = cache.get(profileName, query, entityClass);
+
+            if (items != null) {
+                logger.debug(methodName, "Found ", items.size(), " cached items in collection [", collectionName, "].");
+
+                metrics.increment("melior.mongo.cache", collectionName, "hit", 1);
+
+                return items;
+            }
+
+            metrics.increment("melior.mongo.cache", collectionName, "miss", 1);
+
+            generation = cache.getGeneration();
+        }
+
+        logger.debug(methodName, "Find items in collection [", collectionName, "]. ", trim(query.getQueryObject()));
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            items = template.find(withDeadline(query, remaining), entityClass, collectionName);
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
+            logger.debug(methodName, "Found ", items.size(), " items.  Duration = ", duration, " ms.");
+
+            if (cache != null) {
+                cache.put(profileName, query, entityClass, items, generation);
+            }
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items find failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to find items: " + exception.getMessage(), exception);
+        }
+
+        return items;
+    }
+
+    /**
+     * Find pages of items in collection, using keyset pagination on the
+     * {@code _id} of the items.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param entityClass The result entity class
+     * @param pageSize The page size
+     * @return The page iterator
+     */
+    public <T> MongoPageIterator<T> findPages(
+        final String collectionName,
+        final Query query,
+        final Class<T> entityClass,
+        final int pageSize) {
+
+        return findPages(collectionName, query, entityClass, "_id", pageSize, null);
+    }
+
+    /**
+     * Find pages of items in collection, using keyset pagination on the
+     * given sort key.  The sort key should be indexed together with
+     * {@code _id}, which is used to order items with equal sort keys.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param entityClass The result entity class
+     * @param sortKey The sort key
+     * @param pageSize The page size
+     * @param continuation The continuation token, or null to start at the first page
+     * @return The page iterator
+     */
+    public <T> MongoPageIterator<T> findPages(
+        final String collectionName,
+        final Query query,
+        final Class<T> entityClass,
+        final String sortKey,
+        final int pageSize,
+        final String continuation) {
+
+        return new MongoPageIterator<T>(this, collectionName, query, entityClass, sortKey, pageSize, continuation);
+    }
+
+    /**
+     * Find page of items in collection, using keyset pagination on the
+     * given sort key.  The page starts after the item that is identified
+     * by the continuation token, so the cost of finding the page does not
+     * depend on how deep into the collection the page lies.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param entityClass The result entity class
+     * @param sortKey The sort key
+     * @param pageSize The page size
+     * @param continuation The continuation token, or null to find the first page
+     * @return The page of items
+     * @throws RemotingException if unable to find the page of items
+     */
+    public <T> MongoPage<T> findPage(
+        final String collectionName,
+        final Query query,
+        final Class<T> entityClass,
+        final String sortKey,
+        final int pageSize,
+        final String continuation) throws RemotingException {
+
+        String methodName = "findPage";
+        Query pageQuery;
+        Timer timer;
+        MongoTemplate template;
+        List<Document> documents;
+        List<T> items;
+        String nextContinuation;
+        long duration;
+        long remaining;
+
         initialize();
 
-        logger.debug(methodName, "Update items in collection [", collectionName, "]. ", trim(update.getUpdateObject()));
-
-        timer = Timer.ofNanos().start();
+        remaining = checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        pageQuery = withDeadline(getPageQuery(query, sortKey, pageSize, continuation), remaining);
+
+        logger.debug(methodName, "Find page of items in collection [", collectionName, "]. ", trim(pageQuery.getQueryObject()));
+
+        acquire(collectionName);
+
+        timer = Timer.ofNanos().start();
+
+        try {
+
+            documents = template.find(pageQuery, Document.class, collectionName);
+
+            items = new ArrayList<T>(Math.min(documents.size(), pageSize));
+
+            for (int i = 0; (i < documents.size()) && (i < pageSize); i++) {
+                items.add(template.getConverter().read(entityClass, documents.get(i)));
+            }
+
+            nextContinuation = (documents.size() > pageSize) ? getContinuation(documents.get(pageSize - 1), sortKey) : null;
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Found ", items.size(), " items.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
+        }
+        catch (RuntimeException exception) {
+
+            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
+
+            logger.debug(methodName, "Items find failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
+        }
+        catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to find items: " + exception.getMessage(), exception);
+        }
+
+        return new MongoPage<T>(items, nextContinuation);
+    }
+
+    /**
+     * Get query for page of items.  Restricts the query to the items which
+     * lie after the position in the continuation token, in the order of the
+     * sort key and {@code _id}, and fetches one extra item to determine
+     * whether there is a next page.
+     * @param query The query to use
+     * @param sortKey The sort key
+     * @param pageSize The page size
+     * @param continuation The continuation token, or null for the first page
+     * @return The query for the page of items
+     * @throws RemotingException if the continuation token is invalid
+     */
+    private Query getPageQuery(
+        final Query query,
+        final String sortKey,
+        final int pageSize,
+        final String continuation) throws RemotingException {
+
+        Document position;
+        Document keyset;
+        Document filter;
+        Query pageQuery;
+
+        if (continuation == null) {
+
+            filter = query.getQueryObject();
+        }
+        else {
+
+            try {
+
+                position = Document.parse(new String(Base64.getUrlDecoder().decode(continuation), StandardCharsets.UTF_8));
+            }
+            catch (Exception exception) {
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Invalid continuation token: " + exception.getMessage(), exception);
+            }
+
+            if (sortKey.equals("_id") == true) {
+
+                keyset = new Document("_id", new Document("$gt", position.get("i")));
+            }
+            else {
+
+                keyset = new Document("$or", Arrays.asList(
+                    new Document(sortKey, new Document("$gt", position.get("k"))),
+                    new Document(sortKey, position.get("k")).append("_id", new Document("$gt", position.get("i")))));
+            }
+
+            filter = new Document("$and", Arrays.asList(query.getQueryObject(), keyset));
+        }
+
+        pageQuery = new BasicQuery(filter, query.getFieldsObject())
+            .with((sortKey.equals("_id") == true) ? Sort.by(Sort.Direction.ASC, "_id") : Sort.by(Sort.Direction.ASC, sortKey, "_id"))
+            .limit(pageSize + 1);
+
+        return pageQuery;
+    }
+
+    /**
+     * Get continuation token for position of item.
+     * @param document The item
+     * @param sortKey The sort key
+     * @return The continuation token
+     */
+    private String getContinuation(
+        final Document document,
+        final String sortKey) {
+
+        Document position;
+        Object value;
 
-        try {
-
-            updateResult = mongoTemplate.updateMulti(query, update, collectionName);
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, updateResult.getModifiedCount(), " items updated successfully.  Duration = ", duration, " ms.");
-        }
-        catch (RuntimeException exception) {
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Items update failed.  Duration = ", duration, " ms.");
-
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
-        }
-        catch (Exception exception) {
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Items update failed.  Duration = ", duration, " ms.");
-
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to update items: " + exception.getMessage(), exception);
+        value = document;
+
+        for (String key : sortKey.split("\\.")) {
+            value = (value instanceof Document) ? ((Document) value).get(key) : null;
         }
 
+        position = new Document("k", value).append("i", document.get("_id"));
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position
+            .toJson(JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build()).getBytes(StandardCharsets.UTF_8));
     }
 
     /**
-     * Delete item from collection.
-     * @param <T> The type
+     * Aggregate items in collection.  The aggregation pipeline is executed
+     * on the MongoDB server.
+     * @param <O> The output type
      * @param collectionName The collection name
-     * @param item The item
-     * @throws RemotingException if unable to delete the item
+     * @param pipeline The aggregation pipeline
+     * @param outputType The output type
+     * @return The list of results
+     * @throws RemotingException if unable to aggregate the items
      */
-    public <T> void delete(
+    public <O> List<O> aggregate(
         final String collectionName,
-        final T item) throws RemotingException {
-
-        String methodName = "delete";
+        final Aggregation pipeline,
+        final Class<O> outputType) throws RemotingException {
+
+        return aggregate(collectionName, pipeline, outputType, pipeline.getOptions());
+    }
+
+    /**
+     * Aggregate items in collection.  The aggregation pipeline is executed
+     * on the MongoDB server with the given options, for example to allow
+     * the server to use temporary files for large stages, to set the cursor
+     * batch size or to limit the execution time.
+     * @param <O> The output type
+     * @param collectionName The collection name
+     * @param pipeline The aggregation pipeline
+     * @param outputType The output type
+     * @param options The aggregation options
+     * @return The list of results
+     * @throws RemotingException if unable to aggregate the items
+     */
+    public <O> List<O> aggregate(
+        final String collectionName,
+        final Aggregation pipeline,
+        final Class<O> outputType,
+        final AggregationOptions options) throws RemotingException {
+
+        String methodName = "aggregate";
         Timer timer;
+        MongoTemplate template;
+        List<O> results;
         long duration;
-
+        long remaining;
+
         initialize();
 
-        logger.debug(methodName, "Delete 1 item in collection [", collectionName, "].");
-
+        remaining = checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Aggregate items in collection [", collectionName, "]. ", pipeline);
+
+        acquire(collectionName);
+
         timer = Timer.ofNanos().start();
 
         try {
-
-            mongoTemplate.remove(item, collectionName);
-
+
+            results = template.aggregate(pipeline.withOptions(withDeadline(options, remaining)), collectionName, outputType).getMappedResults();
+
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Item deleted successfully.  Duration = ", duration, " ms.");
+
+            logger.debug(methodName, "Aggregated ", results.size(), " results.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
-
+
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Item delete failed.  Duration = ", duration, " ms.");
-
+
+            logger.debug(methodName, "Items aggregate failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
         catch (Exception exception) {
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Item delete failed.  Duration = ", duration, " ms.");
-
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to delete item: " + exception.getMessage(), exception);
+            record(collectionName, methodName, timer, false);
+
+            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to aggregate items: " + exception.getMessage(), exception);
         }
 
+        return results;
     }
 
     /**
-     * Delete items from collection.
-     * @param <T> The type
+     * Aggregate items in collection and stream the results.  The aggregation
+     * pipeline is executed on the MongoDB server with the given options, and
+     * the results are passed to the consumer one at a time as the cursor is
+     * read, so that large result sets are not held in memory.  The permit of
+     * the concurrency limiter is released once the cursor has been opened, so
+     * that a slow consumer neither holds a permit nor inflates the round-trip
+     * time of the collection.
+     * @param <O> The output type
      * @param collectionName The collection name
-     * @param query The query to use
-     * @throws RemotingException if unable to delete the items
+     * @param pipeline The aggregation pipeline
+     * @param outputType The output type
+     * @param options The aggregation options
+     * @param consumer The consumer of the results
+     * @return The number of results
+     * @throws RemotingException if unable to aggregate the items
      */
-    public <T> void delete(
+    public <O> long aggregateStream(
         final String collectionName,
-        final Query query) throws RemotingException {
-
-        String methodName = "delete";
+        final Aggregation pipeline,
+        final Class<O> outputType,
+        final AggregationOptions options,
+        final Consumer<O> consumer) throws RemotingException {
+
+        String methodName = "aggregateStream";
         Timer timer;
-        DeleteResult deleteResult;
+        MongoTemplate template;
+        CloseableIterator<O> iterator;
+        long count = 0;
         long duration;
-
+        long remaining;
+
         initialize();
 
-        logger.debug(methodName, "Delete items in collection [", collectionName, "].");
-
+        remaining = checkDeadline();
+
+        template = getTemplate(collectionName);
+
+        logger.debug(methodName, "Aggregate items in collection [", collectionName, "]. ", pipeline);
+
+        acquire(collectionName);
+
         timer = Timer.ofNanos().start();
 
         try {
-
-            deleteResult = mongoTemplate.remove(query, collectionName);
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, deleteResult.getDeletedCount(), " items deleted successfully.  Duration = ", duration, " ms.");
+
+            iterator = template.aggregateStream(pipeline.withOptions(withDeadline(options, remaining)), collectionName, outputType);
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
-
+
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Items delete failed.  Duration = ", duration, " ms.");
-
+
+            logger.debug(methodName, "Items aggregate failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
+
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
-        catch (Exception exception) {
-
-            duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Items delete failed.  Duration = ", duration, " ms.");
-
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to delete items: " + exception.getMessage(), exception);
-        }
 
-    }
+        try {
 
-    /**
-     * Find items in collection.
-     * @param <T> The type
-     * @param collectionName The collection name
-     * @param query The query to use
-     * @param entityClass The result entity class
-     * @return The list of items
-     * @throws RemotingException if unable to find items
-     */
-    public <T> List<T> find(
-        final String collectionName,
-        final Query query,
-        final Class<T> entityClass) throws RemotingException {
-
-        String methodName = "find";
-        Timer timer;
-        List<T> items;
-        long duration;
-
-        initialize();
+            while (iterator.hasNext() == true) {
 
-        logger.debug(methodName, "Find items in collection [", collectionName, "]. ", trim(query.getQueryObject()));
-
-        timer = Timer.ofNanos().start();
+                consumer.accept(iterator.next());
+
+                count++;
+            }
 
-        try {
-
-            items = mongoTemplate.find(query, entityClass, collectionName);
-
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Found ", items.size(), " items.  Duration = ", duration, " ms.");
+
+            logger.debug(methodName, "Streamed ", count, " results.  Duration = ", duration, " ms.");
         }
         catch (RuntimeException exception) {
-
+
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
-
-            logger.debug(methodName, "Items find failed.  Duration = ", duration, " ms.");
-
+
+            logger.debug(methodName, "Items aggregate failed after ", count, " results.  Duration = ", duration, " ms.");
+
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
-        catch (Exception exception) {
-            throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to find items: " + exception.getMessage(), exception);
+        finally {
+
+            iterator.close();
         }
 
-        return items;
+        return count;
     }
 
     /**
@@ -614,38 +2416,244 @@ public class MongoClient extends MongoClientConfig {
 
         String methodName = "count";
         Timer timer;
+        MongoTemplate template;
         long count;
         long duration;
+        long remaining;
 
         initialize();
 
+        remaining = checkDeadline();
+
+        template = getTemplate(collectionName);
+
         logger.debug(methodName, "Count items in collection [", collectionName, "]. ", trim(query.getQueryObject()));
+
+        acquire(collectionName);
 
         timer = Timer.ofNanos().start();
 
         try {
 
-            count = mongoTemplate.count(query, collectionName);
-
+            if (remaining == Long.MAX_VALUE) {
+
+                count = template.count(query, collectionName);
+            }
+            else {
+
+                count = template.getCollection(collectionName).countDocuments(
+                    new QueryMapper(template.getConverter()).getMappedObject(query.getQueryObject(), Optional.empty()),
+                    new CountOptions().maxTime(remaining, TimeUnit.MILLISECONDS));
+            }
+
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Counted ", count, " items.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, true);
         }
         catch (RuntimeException exception) {
 
             duration = timer.elapsedTime(TimeUnit.MILLISECONDS);
 
             logger.debug(methodName, "Items count failed.  Duration = ", duration, " ms.");
+
+            record(collectionName, methodName, timer, false);
 
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, exception.getMessage(), exception);
         }
         catch (Exception exception) {
+            record(collectionName, methodName, timer, false);
+
             throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Failed to count items: " + exception.getMessage(), exception);
         }
 
         return count;
     }
 
+    /**
+     * Check deadline of current transaction.
+     * @return The time that remains before the deadline, specified in milliseconds, or {@code Long.MAX_VALUE} if there is no deadline
+     * @throws RemotingException if the deadline has passed
+     */
+    private long checkDeadline() throws RemotingException {
+
+        long remaining;
+
+        remaining = MongoDeadline.remaining();
+
+        if (remaining <= 0) {
+            throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Deadline of transaction passed " + (-remaining) + " ms ago.");
+        }
+
+        return remaining;
+    }
+
+    /**
+     * Limit execution time of query to the time that remains before the deadline.
+     * @param query The query
+     * @param remaining The remaining time, specified in milliseconds
+     * @return The query with the execution time limit
+     */
+    private Query withDeadline(
+        final Query query,
+        final long remaining) {
+
+        Long maxTime;
+
+        maxTime = query.getMeta().getMaxTimeMsec();
+
+        if ((remaining == Long.MAX_VALUE) || ((maxTime != null) && (maxTime <= remaining))) {
+            return query;
+        }
+
+        return Query.of(query).maxTimeMsec(remaining);
+    }
+
+    /**
+     * Limit execution time of aggregation to the time that remains before the deadline.
+     * @param options The aggregation options
+     * @param remaining The remaining time, specified in milliseconds
+     * @return The aggregation options with the execution time limit
+     */
+    private AggregationOptions withDeadline(
+        final AggregationOptions options,
+        final long remaining) {
+
+        AggregationOptions.Builder builder;
+
+        if ((remaining == Long.MAX_VALUE) || ((options.hasExecutionTimeLimit() == true) && (options.getMaxTime().toMillis() <= remaining))) {
+            return options;
+        }
+
+        builder = AggregationOptions.builder()
+            .allowDiskUse(options.isAllowDiskUse())
+            .explain(options.isExplain())
+            .maxTime(Duration.ofMillis(remaining));
+
+        options.getCursor().ifPresent(cursor -> builder.cursor(cursor));
+        options.getCollation().ifPresent(collation -> builder.collation(collation));
+        options.getComment().ifPresent(comment -> builder.comment(comment));
+        options.getHint().ifPresent(hint -> builder.hint(hint));
+
+        if (options.isSkipResults() == true) {
+            builder.skipOutput();
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Resolve write concern of write operation.  Applies the time that remains
+     * before the deadline of the current transaction as the write concern timeout.
+     * @param template The template
+     * @param action The write operation
+     * @return The write concern
+     */
+    private WriteConcern resolveWriteConcern(
+        final MongoTemplate template,
+        final MongoAction action) {
+
+        WriteConcern writeConcern;
+        long remaining;
+
+        writeConcern = action.getDefaultWriteConcern();
+
+        remaining = MongoDeadline.remaining();
+
+        if (remaining == Long.MAX_VALUE) {
+            return writeConcern;
+        }
+
+        writeConcern = ObjectUtil.coalesce(writeConcern, template.getDb().getWriteConcern());
+
+        return writeConcern.withWTimeout(Math.max(1, remaining), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Invalidate near cache of collection, if any.
+     * @param collectionName The collection name
+     */
+    private void invalidate(
+        final String collectionName) {
+
+        MongoNearCache cache;
+
+        cache = cacheMap.get(collectionName);
+
+        if (cache != null) {
+            cache.invalidate();
+        }
+
+    }
+
+    /**
+     * Record duration of operation.
+     * @param collectionName The collection name
+     * @param methodName The method name
+     * @param timer The timer
+     * @param success true if the operation succeeded, false otherwise
+     */
+    private void record(
+        final String collectionName,
+        final String methodName,
+        final Timer timer,
+        final boolean success) {
+
+        long duration;
+        MongoLimiter limiter;
+
+        duration = timer.elapsedTime(TimeUnit.NANOSECONDS);
+
+        metrics.record("melior.mongo.client", collectionName, methodName, success, duration);
+
+        limiter = limiterMap.get(collectionName);
+
+        if (limiter != null) {
+            limiter.release(duration, success);
+        }
+
+    }
+
+    /**
+     * Acquire permit from concurrency limiter of collection, if adaptive
+     * concurrency is enabled.  The permit is released when the duration of
+     * the operation is recorded.
+     * @param collectionName The collection name
+     * @throws RemotingException if the operation was shed
+     */
+    private void acquire(
+        final String collectionName) throws RemotingException {
+
+        MongoLimiter limiter;
+
+        if ((isAdaptiveConcurrency() == false) || (control == true)) {
+            return;
+        }
+
+        limiter = limiterMap.computeIfAbsent(collectionName, key -> {
+            MongoLimiter newLimiter = new MongoLimiter(key, Math.min(20, getMaximumConnections()), getMaximumConnections(), getConcurrencyWait());
+
+            metrics.gauge("melior.mongo.client.limit", key, () -> newLimiter.getLimit());
+
+            metrics.gauge("melior.mongo.client.inflight", key, () -> newLimiter.getInFlight());
+
+            return newLimiter;
+        });
+
+        try {
+
+            limiter.acquire();
+        }
+        catch (RemotingException exception) {
+
+            metrics.increment("melior.mongo.client.shed", collectionName, "shed", 1);
+
+            throw exception;
+        }
+
+    }
+
     /**
      * Trim document to more concise format.
      * @param document The document
@@ -7,11 +7,18 @@
         Service Harness
 */
 package org.melior.client.mongo;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 import javax.net.ssl.SSLContext;
 
 /**
  * Convenience class for building a {@code MongoClient}.  Provides
- * a switch for secure connections.
+ * a switch for secure connections, allows near caches to be configured
+ * for collections which rarely change, and allows profiles of write concern,
+ * read concern and read preference, payload codecs and partitions to be
+ * configured for collections.
  * @author Melior
  * @since 2.3
  */
@@ -21,6 +28,16 @@ public class MongoClientBuilder {
 
     private SSLContext sslContext;
 
+    private Map<String, MongoNearCache> cacheMap = new HashMap<String, MongoNearCache>();
+
+    private Map<String, MongoProfile> profileMap = new HashMap<String, MongoProfile>();
+
+    private Map<String, String> collectionProfileMap = new HashMap<String, String>();
+
+    private Map<String, MongoCodec> codecMap = new HashMap<String, MongoCodec>();
+
+    private Map<String, MongoPartitioner> partitionerMap = new HashMap<String, MongoPartitioner>();
+
     /**
      * Constructor.
      */
@@ -44,7 +61,7 @@ public class MongoClientBuilder {
      */
     public MongoClient build() {
 
-        return new MongoClient(ssl, sslContext);
+        return new MongoClient(ssl, sslContext, cacheMap, profileMap, collectionProfileMap, codecMap, partitionerMap);
     }
 
     /**
@@ -71,4 +88,109 @@ public class MongoClientBuilder {
         return this;
     }
 
+    /**
+     * Enable near cache for collection.  The results of queries on the
+     * collection are cached until the collection changes, or until they
+     * expire.
+     * @param collectionName The collection name
+     * @param maximumSize The maximum number of query results to cache
+     * @param timeToLive The time to live of a cached query result
+     * @return The Mongo client builder
+     */
+    public MongoClientBuilder cache(
+        final String collectionName,
+        final int maximumSize,
+        final Duration timeToLive) {
+
+        cacheMap.put(collectionName, new MongoNearCache(collectionName, maximumSize, timeToLive));
+
+        return this;
+    }
+
+    /**
+     * Register profile of write concern, read concern and read preference.
+     * @param profileName The profile name
+     * @param profile The profile
+     * @return The Mongo client builder
+     */
+    public MongoClientBuilder profile(
+        final String profileName,
+        final MongoProfile profile) {
+
+        profileMap.put(profileName, profile);
+
+        return this;
+    }
+
+    /**
+     * Assign registered profile to collection.  The profile applies to every
+     * operation on the collection, unless another profile has been selected
+     * for the call.
+     * @param collectionName The collection name
+     * @param profileName The profile name
+     * @return The Mongo client builder
+     */
+    public MongoClientBuilder collectionProfile(
+        final String collectionName,
+        final String profileName) {
+
+        collectionProfileMap.put(collectionName, profileName);
+
+        return this;
+    }
+
+    /**
+     * Set codec with which the payloads of managed items in collection are
+     * stored.  By default the payloads are stored as BSON sub-documents.
+     * @param collectionName The collection name
+     * @param codec The codec
+     * @return The Mongo client builder
+     */
+    public MongoClientBuilder codec(
+        final String collectionName,
+        final MongoCodec codec) {
+
+        codecMap.put(collectionName, codec);
+
+        return this;
+    }
+
+    /**
+     * Partition collection.  Managed items which are inserted in the collection
+     * are assigned to partitions in round-robin order, and each listener session
+     * only claims items from the partitions which are assigned to it.
+     * @param collectionName The collection name
+     * @param partitions The number of partitions
+     * @return The Mongo client builder
+     */
+    public MongoClientBuilder partitions(
+        final String collectionName,
+        final int partitions) {
+
+        partitionerMap.put(collectionName, new MongoPartitioner(Math.max(1, partitions), null));
+
+        return this;
+    }
+
+    /**
+     * Partition collection by key.  Managed items which are inserted in the
+     * collection are assigned to partitions by the hash of their key, so that
+     * items with the same key are always claimed by the same listener session.
+     * @param <T> The type
+     * @param collectionName The collection name
+     * @param partitions The number of partitions
+     * @param keyFunction The function which extracts the key from an item
+     * @return The Mongo client builder
+     */
+    @SuppressWarnings("unchecked")
+    public <T> MongoClientBuilder partitions(
+        final String collectionName,
+        final int partitions,
+        final Function<T, ?> keyFunction) {
+
+        partitionerMap.put(collectionName, new MongoPartitioner(Math.max(1, partitions), (Function<Object, ?>) keyFunction));
+
+        return this;
+    }
+
 }
@@ -8,6 +8,7 @@
 */
 package org.melior.client.mongo;
 import org.melior.client.core.ClientConfig;
+import org.melior.util.number.Clamp;
 
 /**
  * Configuration parameters for a {@code MongoClient}, with defaults.
@@ -18,6 +19,16 @@ public class MongoClientConfig extends ClientConfig {
 
     private String database;
 
+    private boolean adaptiveConcurrency = false;
+
+    private int concurrencyWait = 0;
+
+    private int reservedConnections = 0;
+
+    private int payloadThreshold = 0;
+
+    private MongoLayout layout = MongoLayout.STANDARD;
+
     /**
      * Constructor.
      */
@@ -35,6 +46,11 @@ public class MongoClientConfig extends ClientConfig {
         final MongoClientConfig clientConfig) {
         super.configure(clientConfig);
         this.database = clientConfig.database;
+        this.adaptiveConcurrency = clientConfig.adaptiveConcurrency;
+        this.concurrencyWait = clientConfig.concurrencyWait;
+        this.reservedConnections = clientConfig.reservedConnections;
+        this.payloadThreshold = clientConfig.payloadThreshold;
+        this.layout = clientConfig.layout;
 
         return this;
     }
@@ -56,4 +72,89 @@ public class MongoClientConfig extends ClientConfig {
         this.database = database;
     }
 
+    /**
+     * Get adaptive concurrency indicator.
+     * @return true if the concurrency of operations is limited adaptively, false otherwise
+     */
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    /**
+     * Set adaptive concurrency indicator.
+     * @param adaptiveConcurrency true if the concurrency of operations must be limited adaptively, false otherwise
+     */
+    public void setAdaptiveConcurrency(
+        final boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+    }
+
+    /**
+     * Get concurrency wait.
+     * @return The concurrency wait
+     */
+    public int getConcurrencyWait() {
+        return concurrencyWait;
+    }
+
+    /**
+     * Set concurrency wait.
+     * @param concurrencyWait The amount of time that an operation may wait when the concurrency limit has been reached, specified in seconds
+     */
+    public void setConcurrencyWait(
+        final int concurrencyWait) {
+        this.concurrencyWait = Clamp.clampInt(concurrencyWait * 1000, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get number of reserved connections.
+     * @return The number of connections reserved for control-plane operations, or 0 if none are reserved
+     */
+    public int getReservedConnections() {
+        return reservedConnections;
+    }
+
+    /**
+     * Set number of reserved connections.
+     * @param reservedConnections The number of connections reserved for control-plane operations, or 0 if none are reserved
+     */
+    public void setReservedConnections(
+        final int reservedConnections) {
+        this.reservedConnections = Clamp.clampInt(reservedConnections, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get payload threshold.
+     * @return The size above which the payloads of managed items are stored in GridFS, specified in bytes, or 0 if never
+     */
+    public int getPayloadThreshold() {
+        return payloadThreshold;
+    }
+
+    /**
+     * Set payload threshold.
+     * @param payloadThreshold The size above which the payloads of managed items are stored in GridFS, specified in kilobytes, or 0 if never
+     */
+    public void setPayloadThreshold(
+        final int payloadThreshold) {
+        this.payloadThreshold = Clamp.clampInt(payloadThreshold * 1024, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get layout of managed items.
+     * @return The layout
+     */
+    public MongoLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Set layout of managed items.
+     * @param layout The layout
+     */
+    public void setLayout(
+        final MongoLayout layout) {
+        this.layout = layout;
+    }
+
 }
@@ -0,0 +1,119 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The codec with which the payloads of managed items in a collection are
+ * stored.  By default the payload of a managed item is stored as a BSON
+ * sub-document, which repeats the field names of the item in every document.
+ * <p>
+ * {@code BINARY} stores the BSON encoding of the payload as a single
+ * {@code BinData} field, which is opaque to the MongoDB server and is only
+ * decoded when the item is handed to the processor.  {@code DEFLATE} also
+ * compresses the BSON encoding, which removes most of the repetition of
+ * the field names, at the cost of CPU time on insert and on decode.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClientBuilder
+ */
+public enum MongoCodec {
+    BINARY,
+    DEFLATE;
+
+    /**
+     * Encode payload.
+     * @param bytes The BSON encoding of the payload
+     * @return The encoded payload
+     */
+    byte[] encode(
+        final byte[] bytes) {
+
+        Deflater deflater;
+        ByteArrayOutputStream outputStream;
+        byte[] buffer;
+
+        if (this == BINARY) {
+            return bytes;
+        }
+
+        deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            outputStream = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            buffer = new byte[8192];
+
+            while (deflater.finished() == false) {
+                outputStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            return outputStream.toByteArray();
+        }
+        finally {
+
+            deflater.end();
+        }
+
+    }
+
+    /**
+     * Decode payload.
+     * @param bytes The encoded payload
+     * @return The BSON encoding of the payload
+     * @throws DataFormatException if the encoded payload is corrupt
+     */
+    byte[] decode(
+        final byte[] bytes) throws DataFormatException {
+
+        Inflater inflater;
+        ByteArrayOutputStream outputStream;
+        byte[] buffer;
+        int length;
+
+        if (this == BINARY) {
+            return bytes;
+        }
+
+        inflater = new Inflater();
+
+        try {
+
+            inflater.setInput(bytes);
+
+            outputStream = new ByteArrayOutputStream(bytes.length * 4);
+            buffer = new byte[8192];
+
+            while (inflater.finished() == false) {
+
+                length = inflater.inflate(buffer);
+
+                if ((length == 0) && (inflater.needsInput() == true)) {
+                    throw new DataFormatException("Payload is truncated.");
+                }
+
+                outputStream.write(buffer, 0, length);
+            }
+
+            return outputStream.toByteArray();
+        }
+        finally {
+
+            inflater.end();
+        }
+
+    }
+
+}
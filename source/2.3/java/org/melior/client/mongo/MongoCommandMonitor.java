@@ -0,0 +1,68 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.concurrent.TimeUnit;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Monitors the commands that a {@code MongoClient} sends to the MongoDB server.
+ * Records the round-trip time of each command, as measured by the MongoDB
+ * driver, so that the latency of the server may be distinguished from the
+ * amount of time spent waiting for a connection.
+ * @author Melior
+ * @since 2.3
+ */
+class MongoCommandMonitor implements CommandListener {
+
+    private MongoMetrics metrics;
+
+    /**
+     * Constructor.
+     * @param metrics The metrics
+     */
+    MongoCommandMonitor(
+        final MongoMetrics metrics) {
+
+        super();
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Handle start of command.
+     * @param event The event
+     */
+    public void commandStarted(
+        final CommandStartedEvent event) {
+    }
+
+    /**
+     * Handle successful command.
+     * @param event The event
+     */
+    public void commandSucceeded(
+        final CommandSucceededEvent event) {
+
+        metrics.record("melior.mongo.command", null, event.getCommandName(), true, event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Handle failed command.
+     * @param event The event
+     */
+    public void commandFailed(
+        final CommandFailedEvent event) {
+
+        metrics.record("melior.mongo.command", null, event.getCommandName(), false, event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+}
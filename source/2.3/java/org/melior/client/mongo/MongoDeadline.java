@@ -0,0 +1,79 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.time.Duration;
+
+/**
+ * Holds the deadline of the transaction which is being processed by the
+ * current thread, alongside the {@code TransactionContext}.  When a deadline
+ * is present, the {@code MongoClient} limits the execution time of queries
+ * on the MongoDB server to the time that remains, applies the remaining time
+ * as the write concern timeout of writes, and fails operations immediately
+ * once the deadline has passed.
+ * <p>
+ * The deadline must be cleared when the transaction completes, as the thread
+ * may be reused for another transaction.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient
+ */
+public class MongoDeadline {
+
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<Long>();
+
+    /**
+     * Constructor.
+     */
+    private MongoDeadline() {
+
+        super();
+    }
+
+    /**
+     * Set deadline of current transaction.
+     * @param budget The amount of time that the transaction may take from now
+     */
+    public static void set(
+        final Duration budget) {
+
+        deadline.set(System.currentTimeMillis() + budget.toMillis());
+    }
+
+    /**
+     * Set deadline of current transaction.
+     * @param time The time at which the transaction must complete
+     */
+    public static void set(
+        final long time) {
+
+        deadline.set(time);
+    }
+
+    /**
+     * Clear deadline of current transaction.
+     */
+    public static void clear() {
+
+        deadline.remove();
+    }
+
+    /**
+     * Get time that remains before the deadline of the current transaction.
+     * @return The remaining time, specified in milliseconds, or {@code Long.MAX_VALUE} if there is no deadline
+     */
+    public static long remaining() {
+
+        Long time;
+
+        time = deadline.get();
+
+        return (time == null) ? Long.MAX_VALUE : time - System.currentTimeMillis();
+    }
+
+}
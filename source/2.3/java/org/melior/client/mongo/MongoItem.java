@@ -8,9 +8,11 @@
 */
 package org.melior.client.mongo;
 import java.time.Duration;
+import java.util.Date;
 import org.melior.context.transaction.TransactionContext;
 import org.melior.service.work.ManagedItem;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 
 /**
  * A managed item which is stored in a MongoDB collection. The item
@@ -19,6 +21,10 @@ import org.springframework.data.annotation.Id;
  * <p>
  * A managed item is expected to be short-lived and will progress
  * through various states during its lifecycle in the collection.
+ * <p>
+ * If the payload of the item is large, then it may be stored in GridFS
+ * instead, in which case the managed item only holds a reference to it.
+ * The payload may also be stored in a compact binary encoding.
  * @author Melior
  * @since 2.3
  */
@@ -35,6 +41,28 @@ public class MongoItem<T> extends ManagedItem<T> {
 
     private Long eligible;
 
+    private Long enqueued;
+
+    private String payload;
+
+    private Integer payloadSize;
+
+    private byte[] binary;
+
+    private String codec;
+
+    private Integer partition;
+
+    private Date completed;
+
+    private String schedule;
+
+    @Transient
+    private long queued;
+
+    @Transient
+    private long estimatedSize;
+
     /**
      * Constructor.
      */
@@ -75,6 +103,10 @@ public class MongoItem<T> extends ManagedItem<T> {
         transaction = transactionContext.getTransactionId();
 
         correlation = transactionContext.getCorrelationId();
+
+        enqueued = System.currentTimeMillis();
+
+        eligible = enqueued;
     }
 
     /**
@@ -92,7 +124,7 @@ public class MongoItem<T> extends ManagedItem<T> {
 
         this(transactionContext, item, state);
 
-        eligible = System.currentTimeMillis() + delay.toMillis();
+        eligible = enqueued + delay.toMillis();
     }
 
     /**
@@ -152,4 +184,165 @@ public class MongoItem<T> extends ManagedItem<T> {
         return eligible;
     }
 
+    /**
+     * Get time at which item was added to the collection.
+     * @return The time at which item was added to the collection
+     */
+    public Long getEnqueued() {
+        return enqueued;
+    }
+
+    /**
+     * Get reference to payload in GridFS.
+     * @return The reference to the payload, or null if the payload is stored in the item
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Set reference to payload in GridFS.
+     * @param payload The reference to the payload
+     */
+    public void setPayload(
+        final String payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * Get size of payload in GridFS.
+     * @return The size of the encoded payload, specified in bytes, or null if unknown
+     */
+    public Integer getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * Set size of payload in GridFS.
+     * @param payloadSize The size of the encoded payload, specified in bytes
+     */
+    public void setPayloadSize(
+        final Integer payloadSize) {
+        this.payloadSize = payloadSize;
+    }
+
+    /**
+     * Get encoded payload.
+     * @return The encoded payload, or null if the payload is not stored in encoded form in the item
+     */
+    public byte[] getBinary() {
+        return binary;
+    }
+
+    /**
+     * Set encoded payload.
+     * @param binary The encoded payload
+     */
+    public void setBinary(
+        final byte[] binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Get codec with which the payload was encoded.
+     * @return The codec name, or null if the payload was encoded as plain BSON
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    /**
+     * Set codec with which the payload was encoded.
+     * @param codec The codec name
+     */
+    public void setCodec(
+        final String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Get partition.
+     * @return The partition, or null if the collection is not partitioned
+     */
+    public Integer getPartition() {
+        return partition;
+    }
+
+    /**
+     * Set partition.
+     * @param partition The partition
+     */
+    public void setPartition(
+        final Integer partition) {
+        this.partition = partition;
+    }
+
+    /**
+     * Get time at which item was completed.
+     * @return The time at which item was completed, or null if the item has not been completed
+     */
+    public Date getCompleted() {
+        return completed;
+    }
+
+    /**
+     * Set time at which item was completed.
+     * @param completed The time at which item was completed
+     */
+    public void setCompleted(
+        final Date completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * Get schedule.
+     * @return The cron expression or the interval of the schedule, or null if the item is not a schedule
+     */
+    public String getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Set schedule.
+     * @param schedule The cron expression or the interval of the schedule
+     */
+    public void setSchedule(
+        final String schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Get time at which item was queued for processing.
+     * @return The time at which item was queued, specified in nanoseconds
+     */
+    public long getQueued() {
+        return queued;
+    }
+
+    /**
+     * Set time at which item was queued for processing.
+     * @param queued The time at which item was queued, specified in nanoseconds
+     */
+    public void setQueued(
+        final long queued) {
+        this.queued = queued;
+    }
+
+    /**
+     * Get estimated size of item on the heap.
+     * @return The estimated size, specified in bytes
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    /**
+     * Set estimated size of item on the heap.
+     * @param estimatedSize The estimated size, specified in bytes
+     */
+    public void setEstimatedSize(
+        final long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
 }
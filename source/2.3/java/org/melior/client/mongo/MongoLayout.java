@@ -0,0 +1,114 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.HashMap;
+import java.util.Map;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.query.Update;
+
+/**
+ * The layout in which the metadata of managed items is stored in a MongoDB
+ * collection.  {@code STANDARD} stores the metadata under the full names of
+ * the properties of {@code MongoItem}.  {@code COMPACT} stores the metadata
+ * under short field keys, which reduces the size of every document and of
+ * every index on large queue collections.
+ * <p>
+ * The {@code MongoClient} reads managed items in either layout, so that
+ * the items of a collection may be migrated to the compact layout while
+ * the collection remains in use.
+ * @author Melior
+ * @since 2.3
+ */
+public enum MongoLayout {
+    STANDARD,
+    COMPACT;
+
+    private static final String[][] FIELDS = {
+        {"state", "st"},
+        {"stateMessage", "sm"},
+        {"item", "it"},
+        {"session", "ss"},
+        {"transaction", "tx"},
+        {"correlation", "co"},
+        {"eligible", "el"},
+        {"enqueued", "eq"},
+        {"payload", "pl"},
+        {"payloadSize", "ps"},
+        {"binary", "bn"},
+        {"codec", "cd"},
+        {"partition", "pt"},
+        {"completed", "cp"},
+        {"schedule", "sc"}};
+
+    private static final Map<String, String> compactMap = new HashMap<String, String>();
+
+    static {
+
+        for (String[] field : FIELDS) {
+            compactMap.put(field[0], field[1]);
+        }
+
+    }
+
+    /**
+     * Get field key of metadata property of managed item.
+     * @param property The property name
+     * @return The field key in this layout
+     */
+    public String field(
+        final String property) {
+
+        return (this == COMPACT) ? compactMap.getOrDefault(property, property) : property;
+    }
+
+    /**
+     * Get update which renames the fields of a managed item that is stored in
+     * the standard layout to the field keys of the compact layout.
+     * @return The update
+     */
+    public static Update migration() {
+
+        Update update;
+
+        update = new Update();
+
+        for (String[] field : FIELDS) {
+            update.rename(field[0], field[1]);
+        }
+
+        return update;
+    }
+
+    /**
+     * Normalize document of managed item to this layout.  Fields which are
+     * stored in the other layout are renamed to the field keys of this layout.
+     * @param document The document
+     * @return The normalized document
+     */
+    Document normalize(
+        final Document document) {
+
+        String from;
+        String to;
+
+        for (String[] field : FIELDS) {
+
+            from = (this == COMPACT) ? field[0] : field[1];
+            to = (this == COMPACT) ? field[1] : field[0];
+
+            if ((document.containsKey(from) == true) && (document.containsKey(to) == false)) {
+                document.put(to, document.remove(from));
+            }
+
+        }
+
+        return document;
+    }
+
+}
@@ -0,0 +1,187 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.concurrent.TimeUnit;
+import org.melior.client.exception.RemotingException;
+import org.melior.service.exception.ExceptionType;
+
+/**
+ * An adaptive concurrency limiter for the operations of a {@code MongoClient}
+ * on a MongoDB collection.  The limiter discovers the number of operations
+ * which may be in flight concurrently from the observed round-trip times,
+ * using a gradient algorithm in the style of TCP Vegas.  The limit grows
+ * while the round-trip times remain close to the long-term average, and
+ * shrinks in proportion when the round-trip times rise above it, which
+ * happens well before the connection pool is exhausted when the MongoDB
+ * server slows down.  The limit is not adjusted while fewer than half of
+ * the permits are in use, as the round-trip times then say nothing about
+ * the capacity of the server.
+ * <p>
+ * Operations that exceed the limit wait for the configured amount of time,
+ * bounded by the deadline of the transaction, and are then shed with a
+ * {@code RemotingException}.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient
+ */
+class MongoLimiter {
+
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final int WARMUP = 10;
+
+    private String collectionName;
+
+    private int maximumLimit;
+
+    private long waitTime;
+
+    private double limit;
+
+    private int inFlight;
+
+    private double longRtt;
+
+    private long samples;
+
+    /**
+     * Constructor.
+     * @param collectionName The collection name
+     * @param initialLimit The initial limit
+     * @param maximumLimit The maximum limit
+     * @param waitTime The amount of time that an operation may wait when the limit has been reached, specified in milliseconds
+     */
+    MongoLimiter(
+        final String collectionName,
+        final int initialLimit,
+        final int maximumLimit,
+        final long waitTime) {
+
+        super();
+
+        this.collectionName = collectionName;
+
+        this.maximumLimit = Math.max(1, maximumLimit);
+
+        this.waitTime = waitTime;
+
+        limit = Math.max(1, Math.min(initialLimit, this.maximumLimit));
+    }
+
+    /**
+     * Get current limit.
+     * @return The current limit
+     */
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get number of operations in flight.
+     * @return The number of operations in flight
+     */
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Acquire permit to start an operation.  Waits for a permit if the limit has
+     * been reached, for no longer than the wait time or the time that remains
+     * before the deadline of the transaction, whichever is sooner.
+     * @throws RemotingException if no permit became available in time
+     */
+    synchronized void acquire() throws RemotingException {
+
+        long timeout;
+        long remaining;
+
+        if (inFlight < (int) limit) {
+
+            inFlight++;
+
+            return;
+        }
+
+        timeout = System.currentTimeMillis() + Math.min(waitTime, MongoDeadline.remaining());
+
+        while (inFlight >= (int) limit) {
+
+            remaining = timeout - System.currentTimeMillis();
+
+            if (remaining <= 0) {
+                throw new RemotingException(ExceptionType.REMOTING_COMMUNICATION, "Concurrency limit of " + (int) limit
+                    + " reached for collection [" + collectionName + "].  Operation was shed.");
+            }
+
+            try {
+
+                wait(remaining);
+            }
+            catch (InterruptedException exception) {
+
+                Thread.currentThread().interrupt();
+
+                throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Interrupted while waiting for concurrency limit.", exception);
+            }
+
+        }
+
+        inFlight++;
+    }
+
+    /**
+     * Release permit once an operation has completed, and adjust the limit
+     * from the round-trip time of the operation.  The long-term average
+     * round-trip time is only updated by operations that succeeded, so that
+     * failures which take long, such as timeouts, shrink the limit without
+     * inflating the average.  All waiting operations are woken, as the limit
+     * may have grown by more than one permit.
+     * @param rtt The round-trip time, specified in nanoseconds
+     * @param success true if the operation succeeded, false otherwise
+     */
+    synchronized void release(
+        final long rtt,
+        final boolean success) {
+
+        double gradient;
+        double newLimit;
+        boolean applicationLimited;
+
+        applicationLimited = inFlight < (limit / 2);
+
+        inFlight = Math.max(0, inFlight - 1);
+
+        notifyAll();
+
+        if (success == true) {
+
+            samples++;
+
+            longRtt = (samples == 1) ? rtt : longRtt + (rtt - longRtt) / Math.min(samples, 600);
+
+            if (longRtt > rtt * 2) {
+                longRtt = longRtt * 0.95;
+            }
+
+        }
+
+        if ((samples < WARMUP) || (applicationLimited == true)) {
+            return;
+        }
+
+        gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / Math.max(1, rtt)));
+
+        newLimit = limit * gradient + Math.sqrt(limit);
+
+        limit = Math.max(1, Math.min(maximumLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+
+}
@@ -0,0 +1,219 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the latency distributions and throughput of MongoDB operations
+ * in a Micrometer {@code MeterRegistry}.  Latencies are recorded in timers
+ * which publish percentile histograms, so that the distributions may be
+ * aggregated across nodes by the monitoring system.
+ * <p>
+ * The meters are created lazily and are cached for reuse.  The registry
+ * is resolved when the first meter is created.  If no registry is available
+ * then the global Micrometer registry is used.
+ * @author Melior
+ * @since 2.3
+ */
+public class MongoMetrics {
+
+    private Supplier<MeterRegistry> registrySupplier;
+
+    private MeterRegistry registry;
+
+    private String owner;
+
+    private Map<String, Timer> timerMap;
+
+    private Map<String, Counter> counterMap;
+
+    /**
+     * Constructor.
+     * @param owner The name of the component which owns the metrics
+     */
+    public MongoMetrics(
+        final String owner) {
+
+        super();
+
+        this.owner = owner;
+
+        timerMap = new ConcurrentHashMap<String, Timer>();
+
+        counterMap = new ConcurrentHashMap<String, Counter>();
+    }
+
+    /**
+     * Set registry supplier.  Only takes effect if no meters have been
+     * created yet.
+     * @param registrySupplier The registry supplier
+     * @return The Mongo metrics
+     */
+    public MongoMetrics registry(
+        final Supplier<MeterRegistry> registrySupplier) {
+
+        this.registrySupplier = registrySupplier;
+
+        return this;
+    }
+
+    /**
+     * Set name of the component which owns the metrics.
+     * @param owner The owner
+     * @return The Mongo metrics
+     */
+    public MongoMetrics owner(
+        final String owner) {
+
+        this.owner = owner;
+
+        return this;
+    }
+
+    /**
+     * Get name of the component which owns the metrics.
+     * @return The owner
+     */
+    public String getOwner() {
+        return owner;
+    }
+
+    /**
+     * Record duration of operation.
+     * @param metric The metric name
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @param operation The operation or phase
+     * @param success true if the operation succeeded, false otherwise
+     * @param duration The duration, specified in nanoseconds
+     */
+    public void record(
+        final String metric,
+        final String collection,
+        final String operation,
+        final boolean success,
+        final long duration) {
+
+        timer(metric, collection, operation, (success == true) ? "success" : "failure").record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Increment counter.
+     * @param metric The metric name
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @param outcome The outcome
+     * @param amount The amount to increment by
+     */
+    public void increment(
+        final String metric,
+        final String collection,
+        final String outcome,
+        final long amount) {
+
+        counter(metric, collection, outcome).increment(amount);
+    }
+
+    /**
+     * Register gauge.  The gauge samples the value from the supplier
+     * whenever the registry is scraped.
+     * @param metric The metric name
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @param valueSupplier The value supplier
+     */
+    public void gauge(
+        final String metric,
+        final String collection,
+        final Supplier<Number> valueSupplier) {
+
+        Gauge.builder(metric, valueSupplier)
+            .tags(tags(collection))
+            .register(getRegistry());
+    }
+
+    /**
+     * Get timer.  Creates the timer if it does not exist yet.
+     * @param metric The metric name
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @param operation The operation or phase
+     * @param outcome The outcome
+     * @return The timer
+     */
+    public Timer timer(
+        final String metric,
+        final String collection,
+        final String operation,
+        final String outcome) {
+
+        return timerMap.computeIfAbsent(metric + "|" + collection + "|" + operation + "|" + outcome,
+            key -> Timer.builder(metric)
+                .tags(tags(collection))
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99, 0.999)
+                .register(getRegistry()));
+    }
+
+    /**
+     * Get counter.  Creates the counter if it does not exist yet.
+     * @param metric The metric name
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @param outcome The outcome
+     * @return The counter
+     */
+    public Counter counter(
+        final String metric,
+        final String collection,
+        final String outcome) {
+
+        return counterMap.computeIfAbsent(metric + "|" + collection + "|" + outcome,
+            key -> Counter.builder(metric)
+                .tags(tags(collection))
+                .tag("outcome", outcome)
+                .register(getRegistry()));
+    }
+
+    /**
+     * Get common tags.
+     * @param collection The collection name, or null if the metric does not apply to a collection
+     * @return The common tags
+     */
+    private Tags tags(
+        final String collection) {
+
+        return (collection == null) ? Tags.of("owner", owner) : Tags.of("owner", owner, "collection", collection);
+    }
+
+    /**
+     * Get registry.  Resolves the registry on first use.
+     * @return The registry
+     */
+    public synchronized MeterRegistry getRegistry() {
+
+        MeterRegistry meterRegistry;
+
+        if (registry == null) {
+
+            meterRegistry = (registrySupplier == null) ? null : registrySupplier.get();
+
+            registry = (meterRegistry == null) ? Metrics.globalRegistry : meterRegistry;
+        }
+
+        return registry;
+    }
+
+}
@@ -0,0 +1,232 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * A near cache for the results of queries on a MongoDB collection which
+ * rarely changes, such as a collection of reference data.  The cache is
+ * bounded in size and evicts the least recently used results first, and
+ * each result expires after the configured time to live.
+ * <p>
+ * The {@code MongoClient} invalidates the cache whenever it writes to the
+ * collection, and whenever the change stream on the collection reports
+ * a change that was made by another client.  The cache carries a generation
+ * number which is advanced on every invalidation, so that a result which
+ * was read while an invalidation took place is never stored.  If the server
+ * does not support change streams, then changes made by other clients are
+ * only picked up once the cached results expire.
+ * <p>
+ * Results are cached per profile, as profiles may read from different
+ * members of the replica set, with different read concerns.
+ * <p>
+ * The cached results are shared between callers and must not be modified.
+ * @author Melior
+ * @since 2.3
+ */
+public class MongoNearCache {
+
+    private String collectionName;
+
+    private long timeToLive;
+
+    private Map<String, Entry> entryMap;
+
+    private AtomicLong generation;
+
+    /**
+     * Constructor.
+     * @param collectionName The collection name
+     * @param maximumSize The maximum number of query results to cache
+     * @param timeToLive The time to live of a cached query result
+     */
+    MongoNearCache(
+        final String collectionName,
+        final int maximumSize,
+        final Duration timeToLive) {
+
+        super();
+
+        this.collectionName = collectionName;
+
+        this.timeToLive = timeToLive.toMillis();
+
+        entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                final Map.Entry<String, Entry> eldest) {
+
+                return size() > maximumSize;
+            }
+
+        };
+
+        generation = new AtomicLong();
+    }
+
+    /**
+     * Get collection name.
+     * @return The collection name
+     */
+    public String getCollectionName() {
+        return collectionName;
+    }
+
+    /**
+     * Get cached query result.
+     * @param <T> The type
+     * @param profileName The profile name, or null if no profile applies
+     * @param query The query
+     * @param entityClass The result entity class
+     * @return The cached list of items, or null if the result is not cached or has expired
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> get(
+        final String profileName,
+        final Query query,
+        final Class<T> entityClass) {
+
+        String key;
+        Entry entry;
+
+        key = getKey(profileName, query, entityClass);
+
+        synchronized (entryMap) {
+
+            entry = entryMap.get(key);
+
+            if ((entry != null) && (entry.expiry < System.currentTimeMillis())) {
+
+                entryMap.remove(key);
+
+                entry = null;
+            }
+
+        }
+
+        return (entry == null) ? null : (List<T>) entry.items;
+    }
+
+    /**
+     * Store query result in cache.  The result is discarded if the cache
+     * has been invalidated since the query was dispatched.
+     * @param <T> The type
+     * @param profileName The profile name, or null if no profile applies
+     * @param query The query
+     * @param entityClass The result entity class
+     * @param items The list of items
+     * @param queryGeneration The generation of the cache when the query was dispatched
+     */
+    <T> void put(
+        final String profileName,
+        final Query query,
+        final Class<T> entityClass,
+        final List<T> items,
+        final long queryGeneration) {
+
+        String key;
+
+        key = getKey(profileName, query, entityClass);
+
+        synchronized (entryMap) {
+
+            if (generation.get() == queryGeneration) {
+                entryMap.put(key, new Entry(Collections.unmodifiableList(items), System.currentTimeMillis() + timeToLive));
+            }
+
+        }
+
+    }
+
+    /**
+     * Invalidate all cached query results.
+     */
+    void invalidate() {
+
+        synchronized (entryMap) {
+
+            generation.incrementAndGet();
+
+            entryMap.clear();
+        }
+
+    }
+
+    /**
+     * Get generation of cache.
+     * @return The generation
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get number of cached query results.
+     * @return The number of cached query results
+     */
+    public int size() {
+
+        synchronized (entryMap) {
+            return entryMap.size();
+        }
+
+    }
+
+    /**
+     * Get cache key for query.
+     * @param profileName The profile name, or null if no profile applies
+     * @param query The query
+     * @param entityClass The result entity class
+     * @return The cache key
+     */
+    private String getKey(
+        final String profileName,
+        final Query query,
+        final Class<?> entityClass) {
+
+        return profileName + "|" + entityClass.getName() + "|" + query.getQueryObject().toJson() + "|" + query.getFieldsObject().toJson()
+            + "|" + query.getSortObject().toJson() + "|" + query.getSkip() + "|" + query.getLimit();
+    }
+
+    /**
+     * A cached query result.
+     */
+    private static class Entry {
+
+        private List<?> items;
+
+        private long expiry;
+
+        /**
+         * Constructor.
+         * @param items The list of items
+         * @param expiry The time of expiry
+         */
+        Entry(
+            final List<?> items,
+            final long expiry) {
+
+            super();
+
+            this.items = items;
+
+            this.expiry = expiry;
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.List;
+
+/**
+ * A page of items which has been retrieved from a MongoDB collection using
+ * keyset pagination.  The page carries a continuation token which identifies
+ * the position of the last item on the page, and which may be used to
+ * retrieve the next page.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient
+ */
+public class MongoPage<T> {
+
+    private List<T> items;
+
+    private String continuation;
+
+    /**
+     * Constructor.
+     * @param items The list of items
+     * @param continuation The continuation token, or null if this is the last page
+     */
+    MongoPage(
+        final List<T> items,
+        final String continuation) {
+
+        super();
+
+        this.items = items;
+
+        this.continuation = continuation;
+    }
+
+    /**
+     * Get items.
+     * @return The list of items
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Get continuation token.
+     * @return The continuation token, or null if this is the last page
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    /**
+     * Indicates if this is the last page.
+     * @return true if this is the last page, false otherwise
+     */
+    public boolean isLast() {
+        return continuation == null;
+    }
+
+}
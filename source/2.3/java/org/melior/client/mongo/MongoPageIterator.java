@@ -0,0 +1,117 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import org.melior.client.exception.RemotingException;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Iterates over the pages of items which match a query on a MongoDB collection,
+ * using keyset pagination.  Each page is retrieved with a range query on the
+ * sort key, which starts after the last item of the previous page, so the
+ * cost of retrieving a page does not depend on how deep into the collection
+ * the page lies.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient
+ * @see MongoPage
+ */
+public class MongoPageIterator<T> {
+
+    private MongoClient mongoClient;
+
+    private String collectionName;
+
+    private Query query;
+
+    private Class<T> entityClass;
+
+    private String sortKey;
+
+    private int pageSize;
+
+    private String continuation;
+
+    private boolean last;
+
+    /**
+     * Constructor.
+     * @param mongoClient The Mongo client
+     * @param collectionName The collection name
+     * @param query The query to use
+     * @param entityClass The result entity class
+     * @param sortKey The sort key
+     * @param pageSize The page size
+     * @param continuation The continuation token, or null to start at the first page
+     */
+    MongoPageIterator(
+        final MongoClient mongoClient,
+        final String collectionName,
+        final Query query,
+        final Class<T> entityClass,
+        final String sortKey,
+        final int pageSize,
+        final String continuation) {
+
+        super();
+
+        this.mongoClient = mongoClient;
+
+        this.collectionName = collectionName;
+
+        this.query = query;
+
+        this.entityClass = entityClass;
+
+        this.sortKey = sortKey;
+
+        this.pageSize = pageSize;
+
+        this.continuation = continuation;
+    }
+
+    /**
+     * Indicates if there may be another page.
+     * @return true if there may be another page, false otherwise
+     */
+    public boolean hasNext() {
+        return last == false;
+    }
+
+    /**
+     * Get next page.
+     * @return The next page
+     * @throws RemotingException if unable to retrieve the next page
+     */
+    public MongoPage<T> next() throws RemotingException {
+
+        MongoPage<T> page;
+
+        if (last == true) {
+            throw new IllegalStateException("There are no more pages.");
+        }
+
+        page = mongoClient.findPage(collectionName, query, entityClass, sortKey, pageSize, continuation);
+
+        continuation = page.getContinuation();
+
+        last = page.isLast();
+
+        return page;
+    }
+
+    /**
+     * Get continuation token.  The token may be stored to resume the
+     * iteration later.
+     * @return The continuation token
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+}
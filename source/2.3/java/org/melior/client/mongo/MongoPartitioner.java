@@ -0,0 +1,76 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Assigns the managed items of a partitioned collection to partitions.  If
+ * a key function has been configured, then items are assigned by the hash
+ * of their key, so that items with the same key are always processed by the
+ * same session.  Otherwise items are assigned to partitions in round-robin
+ * order.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClientBuilder
+ */
+class MongoPartitioner {
+
+    private int partitions;
+
+    private Function<Object, ?> keyFunction;
+
+    private AtomicInteger next;
+
+    /**
+     * Constructor.
+     * @param partitions The number of partitions
+     * @param keyFunction The key function, or null to assign items in round-robin order
+     */
+    MongoPartitioner(
+        final int partitions,
+        final Function<Object, ?> keyFunction) {
+
+        super();
+
+        this.partitions = partitions;
+
+        this.keyFunction = keyFunction;
+
+        next = new AtomicInteger();
+    }
+
+    /**
+     * Get number of partitions.
+     * @return The number of partitions
+     */
+    int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Get partition of item.
+     * @param item The item
+     * @return The partition
+     */
+    int partition(
+        final Object item) {
+
+        Object key;
+
+        key = (keyFunction == null) ? null : keyFunction.apply(item);
+
+        if (key == null) {
+            return Math.floorMod(next.getAndIncrement(), partitions);
+        }
+
+        return Math.floorMod(key.hashCode() * 0x9E3779B9, partitions);
+    }
+
+}
@@ -0,0 +1,150 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+/**
+ * Monitors the connection pool of a {@code MongoClient}.  Records the amount
+ * of time that callers wait to check out a connection from the pool, the
+ * number of connections that are open and checked out, and the number of
+ * connections that are created and closed.
+ * <p>
+ * The MongoDB driver checks out connections on the calling thread, so the
+ * start of a check out is tracked per thread.
+ * @author Melior
+ * @since 2.3
+ */
+class MongoPoolMonitor implements ConnectionPoolListener {
+
+    private MongoMetrics metrics;
+
+    private ThreadLocal<Long> checkOutStart;
+
+    private AtomicInteger openConnections;
+
+    private AtomicInteger checkedOutConnections;
+
+    /**
+     * Constructor.
+     * @param metrics The metrics
+     * @param maximumConnections The maximum number of connections in the pool
+     */
+    MongoPoolMonitor(
+        final MongoMetrics metrics,
+        final int maximumConnections) {
+
+        super();
+
+        this.metrics = metrics;
+
+        checkOutStart = new ThreadLocal<Long>();
+
+        openConnections = new AtomicInteger();
+
+        checkedOutConnections = new AtomicInteger();
+
+        metrics.gauge("melior.mongo.pool.size", null, () -> openConnections.get());
+        metrics.gauge("melior.mongo.pool.checkedout", null, () -> checkedOutConnections.get());
+        metrics.gauge("melior.mongo.pool.utilization", null, () -> (double) checkedOutConnections.get() / maximumConnections);
+    }
+
+    /**
+     * Handle start of connection check out.
+     * @param event The event
+     */
+    public void connectionCheckOutStarted(
+        final ConnectionCheckOutStartedEvent event) {
+
+        checkOutStart.set(System.nanoTime());
+    }
+
+    /**
+     * Handle connection check out.
+     * @param event The event
+     */
+    public void connectionCheckedOut(
+        final ConnectionCheckedOutEvent event) {
+
+        checkedOutConnections.incrementAndGet();
+
+        record(true);
+    }
+
+    /**
+     * Handle failed connection check out.
+     * @param event The event
+     */
+    public void connectionCheckOutFailed(
+        final ConnectionCheckOutFailedEvent event) {
+
+        record(false);
+    }
+
+    /**
+     * Handle connection check in.
+     * @param event The event
+     */
+    public void connectionCheckedIn(
+        final ConnectionCheckedInEvent event) {
+
+        checkedOutConnections.decrementAndGet();
+    }
+
+    /**
+     * Handle connection creation.
+     * @param event The event
+     */
+    public void connectionCreated(
+        final ConnectionCreatedEvent event) {
+
+        openConnections.incrementAndGet();
+
+        metrics.increment("melior.mongo.pool.connections", null, "created", 1);
+    }
+
+    /**
+     * Handle connection closure.
+     * @param event The event
+     */
+    public void connectionClosed(
+        final ConnectionClosedEvent event) {
+
+        openConnections.decrementAndGet();
+
+        metrics.increment("melior.mongo.pool.connections", null, "closed", 1);
+    }
+
+    /**
+     * Record amount of time that the caller waited to check out a connection.
+     * @param success true if a connection was checked out, false otherwise
+     */
+    private void record(
+        final boolean success) {
+
+        Long start;
+
+        start = checkOutStart.get();
+
+        if (start != null) {
+
+            checkOutStart.remove();
+
+            metrics.record("melior.mongo.pool.checkout", null, "checkout", success, System.nanoTime() - start);
+        }
+
+    }
+
+}
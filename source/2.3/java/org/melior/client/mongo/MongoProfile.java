@@ -0,0 +1,178 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import com.mongodb.ReadConcern;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.MongoDatabase;
+
+/**
+ * A named profile of write concern, read concern and read preference for
+ * the operations of a {@code MongoClient}, so that each operation pays only
+ * for the durability and consistency that it needs.  For example, inserts
+ * of high-volume telemetry may use {@code w:1}, financial items may use
+ * {@code majority}, and reporting queries may read from secondaries with
+ * a maximum staleness.  Settings which are not specified in the profile
+ * fall back to the defaults of the connection string.
+ * <p>
+ * Profiles are registered by name with the {@code MongoClientBuilder} and
+ * are assigned to collections there.  A profile may also be selected for
+ * the calls which are made on the current thread with {@link #use(String)},
+ * in which case it takes precedence over the profile of the collection until
+ * it is cleared.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClientBuilder
+ */
+public class MongoProfile {
+
+    private static final ThreadLocal<String> current = new ThreadLocal<String>();
+
+    private WriteConcern writeConcern;
+
+    private ReadConcern readConcern;
+
+    private ReadPreference readPreference;
+
+    /**
+     * Constructor.
+     */
+    private MongoProfile() {
+
+        super();
+    }
+
+    /**
+     * Create Mongo profile.
+     * @return The Mongo profile
+     */
+    public static MongoProfile create() {
+
+        return new MongoProfile();
+    }
+
+    /**
+     * Set write concern.
+     * @param writeConcern The write concern
+     * @return The Mongo profile
+     */
+    public MongoProfile writeConcern(
+        final WriteConcern writeConcern) {
+
+        this.writeConcern = writeConcern;
+
+        return this;
+    }
+
+    /**
+     * Set read concern.
+     * @param readConcern The read concern
+     * @return The Mongo profile
+     */
+    public MongoProfile readConcern(
+        final ReadConcern readConcern) {
+
+        this.readConcern = readConcern;
+
+        return this;
+    }
+
+    /**
+     * Set read preference.  A maximum staleness may be specified on the
+     * read preference, for example {@code ReadPreference.secondaryPreferred(90, TimeUnit.SECONDS)}.
+     * @param readPreference The read preference
+     * @return The Mongo profile
+     */
+    public MongoProfile readPreference(
+        final ReadPreference readPreference) {
+
+        this.readPreference = readPreference;
+
+        return this;
+    }
+
+    /**
+     * Get write concern.
+     * @return The write concern, or null if the default applies
+     */
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    /**
+     * Get read concern.
+     * @return The read concern, or null if the default applies
+     */
+    public ReadConcern getReadConcern() {
+        return readConcern;
+    }
+
+    /**
+     * Get read preference.
+     * @return The read preference, or null if the default applies
+     */
+    public ReadPreference getReadPreference() {
+        return readPreference;
+    }
+
+    /**
+     * Apply profile to database.
+     * @param database The database
+     * @return The database with the settings of the profile
+     */
+    MongoDatabase apply(
+        final MongoDatabase database) {
+
+        MongoDatabase profileDatabase;
+
+        profileDatabase = database;
+
+        if (writeConcern != null) {
+            profileDatabase = profileDatabase.withWriteConcern(writeConcern);
+        }
+
+        if (readConcern != null) {
+            profileDatabase = profileDatabase.withReadConcern(readConcern);
+        }
+
+        if (readPreference != null) {
+            profileDatabase = profileDatabase.withReadPreference(readPreference);
+        }
+
+        return profileDatabase;
+    }
+
+    /**
+     * Select profile for the calls which are made on the current thread.
+     * @param profileName The profile name
+     */
+    public static void use(
+        final String profileName) {
+
+        current.set(profileName);
+    }
+
+    /**
+     * Clear profile for the calls which are made on the current thread.
+     */
+    public static void clear() {
+
+        current.remove();
+    }
+
+    /**
+     * Get profile which has been selected for the calls which are made on the current thread.
+     * @return The profile name, or null if no profile has been selected
+     */
+    static String current() {
+
+        return current.get();
+    }
+
+}
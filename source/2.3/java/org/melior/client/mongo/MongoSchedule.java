@@ -0,0 +1,73 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.client.mongo;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import org.springframework.scheduling.support.CronExpression;
+
+/**
+ * Computes the occurrences of a recurring schedule of managed items.  The
+ * schedule is either a cron expression, with the six fields that Spring
+ * supports, or an interval in ISO-8601 notation, for example {@code PT15M}.
+ * Cron expressions are evaluated in the default time zone.
+ * <p>
+ * Every occurrence is computed from the previous occurrence, rather than from
+ * the time at which the previous occurrence was processed, so the schedule
+ * does not drift.  Occurrences which were missed, for example while no listener
+ * was running, are skipped.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient#schedule(String, String, Object, String)
+ */
+public class MongoSchedule {
+
+    /**
+     * Constructor.
+     */
+    private MongoSchedule() {
+
+        super();
+    }
+
+    /**
+     * Get time of next occurrence of schedule.
+     * @param expression The cron expression or the interval
+     * @param previous The time of the previous occurrence, specified in milliseconds
+     * @param now The current time, specified in milliseconds
+     * @return The time of the first occurrence after both the previous occurrence and the current time,
+     * specified in milliseconds, or {@code Long.MAX_VALUE} if the schedule has no further occurrences
+     * @throws IllegalArgumentException if the expression is neither a valid cron expression nor a valid interval
+     */
+    public static long next(
+        final String expression,
+        final long previous,
+        final long now) {
+
+        long interval;
+        ZonedDateTime next;
+
+        if ((expression.startsWith("P") == true) || (expression.startsWith("p") == true)) {
+
+            interval = Duration.parse(expression).toMillis();
+
+            if (interval <= 0) {
+                throw new IllegalArgumentException("Interval must be positive: " + expression);
+            }
+
+            return (now < previous) ? previous + interval : previous + ((now - previous) / interval + 1) * interval;
+        }
+
+        next = CronExpression.parse(expression).next(ZonedDateTime.ofInstant(Instant.ofEpochMilli(Math.max(previous, now)), ZoneId.systemDefault()));
+
+        return (next == null) ? Long.MAX_VALUE : next.toInstant().toEpochMilli();
+    }
+
+}
@@ -0,0 +1,291 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A budget for the estimated number of bytes of heap memory which may be
+ * occupied by items that have been claimed from a MongoDB collection but
+ * have not been processed yet.  A budget may have a parent budget, such
+ * as the budget of a {@code MongoListener} across all of its collections,
+ * in which case the memory is accounted against both budgets.
+ * <p>
+ * The size of an item is estimated by walking the structure of the item,
+ * which is cheap compared to serializing it, but is only approximate.  The
+ * fields of plain objects are found by reflection once per class, and objects
+ * which are referenced more than once are only counted once.
+ * @author Melior
+ * @since 2.3
+ */
+public class MemoryBudget {
+
+    private static final long ITEM_OVERHEAD = 256;
+
+    private static final int MAX_DEPTH = 16;
+
+    private static final Map<Class<?>, Field[]> fieldMap = new ConcurrentHashMap<Class<?>, Field[]>();
+
+    private MemoryBudget parent;
+
+    private long limit;
+
+    private AtomicLong used;
+
+    /**
+     * Constructor.
+     * @param parent The parent budget, or null if there is no parent budget
+     * @param limit The limit, specified in bytes, or 0 if unlimited
+     */
+    MemoryBudget(
+        final MemoryBudget parent,
+        final long limit) {
+
+        super();
+
+        this.parent = parent;
+
+        this.limit = limit;
+
+        used = new AtomicLong();
+    }
+
+    /**
+     * Account for memory.
+     * @param bytes The number of bytes
+     */
+    void acquire(
+        final long bytes) {
+
+        used.addAndGet(bytes);
+
+        if (parent != null) {
+            parent.acquire(bytes);
+        }
+
+    }
+
+    /**
+     * Release memory.
+     * @param bytes The number of bytes
+     */
+    void release(
+        final long bytes) {
+
+        used.addAndGet(-bytes);
+
+        if (parent != null) {
+            parent.release(bytes);
+        }
+
+    }
+
+    /**
+     * Get number of bytes which are available.
+     * @return The number of bytes which are available, or {@code Long.MAX_VALUE} if unlimited
+     */
+    public long available() {
+
+        long available;
+
+        available = (limit == 0) ? Long.MAX_VALUE : Math.max(0, limit - used.get());
+
+        return (parent == null) ? available : Math.min(available, parent.available());
+    }
+
+    /**
+     * Indicates if the budget, or its parent budget, has been exhausted.
+     * @return true if the budget has been exhausted, false otherwise
+     */
+    public boolean isExhausted() {
+        return available() == 0;
+    }
+
+    /**
+     * Get number of bytes which are in use.
+     * @return The number of bytes which are in use
+     */
+    public long getUsed() {
+        return used.get();
+    }
+
+    /**
+     * Estimate size of managed item on the heap.
+     * @param item The item
+     * @return The estimated size, specified in bytes
+     */
+    static long estimate(
+        final Object item) {
+
+        return ITEM_OVERHEAD + estimateObject(item, new IdentityHashMap<Object, Object>(), 0);
+    }
+
+    /**
+     * Estimate size of object on the heap.
+     * @param object The object
+     * @param visited The objects which have already been counted
+     * @param depth The depth of the object in the structure of the item
+     * @return The estimated size, specified in bytes
+     */
+    private static long estimateObject(
+        final Object object,
+        final Map<Object, Object> visited,
+        final int depth) {
+
+        long size;
+        int length;
+
+        if (object == null) {
+            return 0;
+        }
+
+        if (object instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) object).length();
+        }
+
+        if (object instanceof byte[]) {
+            return 16 + ((byte[]) object).length;
+        }
+
+        if ((object instanceof Number) || (object instanceof Boolean) || (object instanceof Character)
+            || (object instanceof Date)) {
+            return 24;
+        }
+
+        if ((object instanceof Enum) || (object instanceof Class)) {
+            return 0;
+        }
+
+        if ((depth > MAX_DEPTH) || (visited.put(object, object) != null)) {
+            return 0;
+        }
+
+        if (object instanceof Map) {
+
+            size = 64;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                size += 32 + estimateObject(entry.getKey(), visited, depth + 1) + estimateObject(entry.getValue(), visited, depth + 1);
+            }
+
+            return size;
+        }
+
+        if (object instanceof Collection) {
+
+            size = 40;
+
+            for (Object element : (Collection<?>) object) {
+                size += 8 + estimateObject(element, visited, depth + 1);
+            }
+
+            return size;
+        }
+
+        if (object.getClass().isArray() == true) {
+
+            length = Array.getLength(object);
+
+            if (object.getClass().getComponentType().isPrimitive() == true) {
+                return 16 + 8L * length;
+            }
+
+            size = 16;
+
+            for (int i = 0; i < length; i++) {
+                size += 8 + estimateObject(Array.get(object, i), visited, depth + 1);
+            }
+
+            return size;
+        }
+
+        if (object.getClass().getName().startsWith("java.") == true) {
+            return 24;
+        }
+
+        size = 16;
+
+        for (Field field : getFields(object.getClass())) {
+
+            size += 8;
+
+            if (field.getType().isPrimitive() == false) {
+                size += estimateObject(getValue(field, object), visited, depth + 1);
+            }
+
+        }
+
+        return size;
+    }
+
+    /**
+     * Get instance fields of class, including the fields of its superclasses.
+     * @param type The class
+     * @return The instance fields
+     */
+    private static Field[] getFields(
+        final Class<?> type) {
+
+        return fieldMap.computeIfAbsent(type, key -> {
+
+            List<Field> fields = new ArrayList<Field>();
+
+            for (Class<?> current = key; (current != null) && (current != Object.class); current = current.getSuperclass()) {
+
+                for (Field field : current.getDeclaredFields()) {
+
+                    if (Modifier.isStatic(field.getModifiers()) == true) {
+                        continue;
+                    }
+
+                    try {
+                        field.setAccessible(true);
+                    }
+                    catch (RuntimeException exception) {
+                        continue;
+                    }
+
+                    fields.add(field);
+                }
+
+            }
+
+            return fields.toArray(new Field[fields.size()]);
+        });
+    }
+
+    /**
+     * Get value of field of object.
+     * @param field The field
+     * @param object The object
+     * @return The value of the field, or null if the field cannot be read
+     */
+    private static Object getValue(
+        final Field field,
+        final Object object) {
+
+        try {
+            return field.get(object);
+        }
+        catch (Exception exception) {
+            return null;
+        }
+
+    }
+
+}
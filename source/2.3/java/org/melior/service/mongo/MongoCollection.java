@@ -7,13 +7,17 @@
         Service Harness
 */
 package org.melior.service.mongo;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.function.Supplier;
 import org.melior.client.mongo.MongoItem;
 import org.melior.service.work.BatchProcessor;
 import org.melior.service.work.SingletonProcessor;
-import org.melior.util.collection.BoundedBlockingQueue;
-import org.melior.util.collection.Queue;
 import org.melior.util.number.ClampedCounter;
 import org.melior.util.number.Counter;
 
@@ -52,9 +56,9 @@ public class MongoCollection<T> {
 
     private Supplier<ListenerState> stateSupplier = () -> ListenerState.ACTIVE;
 
-    private BoundedBlockingQueue<List<MongoItem<T>>> batchQueue;
+    private RingBuffer<List<MongoItem<T>>> batchQueue;
 
-    private BoundedBlockingQueue<MongoItem<T>> singletonQueue;
+    private RingBuffer<MongoItem<T>> singletonQueue;
 
     private Counter totalItems;
 
@@ -62,16 +66,54 @@ public class MongoCollection<T> {
 
     private ClampedCounter pendingItems;
 
+    private ClampedCounter inflightItems;
+
+    private BlockingQueue<MongoItem<T>> completedQueue;
+
+    private TimingWheel<MongoItem<T>> timingWheel;
+
+    private String historyPrefix;
+
+    private DateTimeFormatter historyBucket;
+
+    private String historySuffix;
+
+    private long historyRetention;
+
+    private volatile String preparedHistoryCollection;
+
+    private volatile long oldestPendingAge;
+
+    private MemoryBudget memoryBudget;
+
+    private volatile long averageItemSize;
+
+    private volatile double claimShare = 1.0;
+
+    private volatile List<Integer> partitions;
+
+    private volatile boolean leader;
+
+    private volatile boolean draining;
+
+    private volatile boolean released;
+
+    private volatile boolean retryPending;
+
     /**
      * Constructor.
      * @param listener The listener
      * @param name The name of the collection
      * @param capacity The capacity of the collection
+     * @param waitStrategy The wait strategy of the collection's queues
+     * @param memoryBudget The memory budget of the collection
      */
     MongoCollection(
         final MongoListener<T> listener,
         final String name,
-        final int capacity) {
+        final int capacity,
+        final WaitStrategy waitStrategy,
+        final MemoryBudget memoryBudget) {
 
         super();
 
@@ -79,13 +121,20 @@ public class MongoCollection<T> {
 
         this.name = name;
 
-        batchQueue = Queue.ofBoundedBlocking(capacity);
+        batchQueue = new RingBuffer<List<MongoItem<T>>>(capacity, waitStrategy);
 
-        singletonQueue = Queue.ofBoundedBlocking(capacity);
+        singletonQueue = new RingBuffer<MongoItem<T>>(capacity, waitStrategy);
+
+        this.memoryBudget = memoryBudget;
 
         totalItems = Counter.of(0);
         failedItems = Counter.of(0);
         pendingItems = ClampedCounter.of(0, 0, Long.MAX_VALUE);
+        inflightItems = ClampedCounter.of(0, 0, Long.MAX_VALUE);
+
+        completedQueue = new LinkedBlockingQueue<MongoItem<T>>();
+
+        timingWheel = new TimingWheel<MongoItem<T>>();
     }
 
     /**
@@ -98,6 +147,63 @@ public class MongoCollection<T> {
         return this;
     }
 
+    /**
+     * Archive processed items in history collection, instead of deleting them.
+     * The processed items are moved to the history collection in batches, and
+     * are retained indefinitely.
+     * @param historyCollection The name of the history collection
+     * @return The Mongo collection
+     * @see #archive(String, Duration)
+     */
+    public MongoCollection<T> archive(
+        final String historyCollection) {
+        return archive(historyCollection, Duration.ZERO);
+    }
+
+    /**
+     * Archive processed items in history collection, instead of deleting them.
+     * The processed items are moved to the history collection in batches, and
+     * are removed by a time-to-live index once the retention has elapsed.
+     * <p>
+     * The history collection may be bucketed by time by including a date pattern
+     * in braces in its name, for example {@code orders_{yyyyMM}}, in which case
+     * the pattern is formatted with the current date in UTC.  The history collection
+     * may also be a time-series collection which has been created in advance with
+     * {@code completed}, or {@code cp} in the compact layout, as its time field,
+     * in which case the retention should be configured on the time-series
+     * collection instead.
+     * @param historyCollection The name of the history collection
+     * @param retention The retention, or zero to retain the items indefinitely
+     * @return The Mongo collection
+     */
+    public MongoCollection<T> archive(
+        final String historyCollection,
+        final Duration retention) {
+
+        int start;
+        int end;
+
+        start = historyCollection.indexOf('{');
+        end = historyCollection.indexOf('}', start + 1);
+
+        if ((start >= 0) && (end > start)) {
+
+            historyPrefix = historyCollection.substring(0, start);
+            historyBucket = DateTimeFormatter.ofPattern(historyCollection.substring(start + 1, end)).withZone(ZoneOffset.UTC);
+            historySuffix = historyCollection.substring(end + 1);
+        }
+        else {
+
+            historyPrefix = historyCollection;
+            historyBucket = null;
+            historySuffix = "";
+        }
+
+        historyRetention = retention.getSeconds();
+
+        return this;
+    }
+
     /**
      * Set batch processor.  New arrivals in the collection will be
      * batched and processed together.  It is the responsibility of
@@ -190,7 +296,7 @@ public class MongoCollection<T> {
      * Get batch queue.
      * @return The batch queue
      */
-    public BoundedBlockingQueue<List<MongoItem<T>>> getBatchQueue() {
+    public RingBuffer<List<MongoItem<T>>> getBatchQueue() {
         return batchQueue;
     }
 
@@ -198,7 +304,7 @@ public class MongoCollection<T> {
      * Get singleton queue.
      * @return The singleton queue
      */
-    public BoundedBlockingQueue<MongoItem<T>> getSingletonQueue() {
+    public RingBuffer<MongoItem<T>> getSingletonQueue() {
         return singletonQueue;
     }
 
@@ -226,4 +332,225 @@ public class MongoCollection<T> {
         return pendingItems;
     }
 
+    /**
+     * Get number of items which have been claimed by the session but
+     * have not been processed yet.
+     * @return The number of in-flight items
+     */
+    ClampedCounter getInflightItems() {
+        return inflightItems;
+    }
+
+    /**
+     * Get queue of items which have been processed individually, but
+     * which have not been marked as done yet.
+     * @return The queue of completed items
+     */
+    BlockingQueue<MongoItem<T>> getCompletedQueue() {
+        return completedQueue;
+    }
+
+    /**
+     * Get timing wheel which holds delayed items which have been claimed
+     * ahead of time until they are due.
+     * @return The timing wheel
+     */
+    TimingWheel<MongoItem<T>> getTimingWheel() {
+        return timingWheel;
+    }
+
+    /**
+     * Determine whether processed items are archived in a history collection.
+     * @return true if processed items are archived, false otherwise
+     */
+    boolean isArchived() {
+        return historyPrefix != null;
+    }
+
+    /**
+     * Get name of history collection in which processed items are archived.
+     * If the history collection is bucketed by time, then the name of the
+     * current bucket is returned.
+     * @return The name of the history collection
+     */
+    String getHistoryCollection() {
+        return (historyBucket == null) ? historyPrefix : historyPrefix + historyBucket.format(Instant.now()) + historySuffix;
+    }
+
+    /**
+     * Get retention of archived items.
+     * @return The retention, specified in seconds, or 0 if the items are retained indefinitely
+     */
+    long getHistoryRetention() {
+        return historyRetention;
+    }
+
+    /**
+     * Get name of history collection which has been prepared most recently.
+     * @return The name of the history collection
+     */
+    String getPreparedHistoryCollection() {
+        return preparedHistoryCollection;
+    }
+
+    /**
+     * Set name of history collection which has been prepared most recently.
+     * @param preparedHistoryCollection The name of the history collection
+     */
+    void setPreparedHistoryCollection(
+        final String preparedHistoryCollection) {
+        this.preparedHistoryCollection = preparedHistoryCollection;
+    }
+
+    /**
+     * Get age of oldest pending item.  The age is sampled periodically,
+     * and may be used by the state supplier to suspend or resume listening
+     * based on the lag of this or another collection.
+     * @return The age of the oldest pending item, specified in milliseconds
+     */
+    public long getOldestPendingAge() {
+        return oldestPendingAge;
+    }
+
+    /**
+     * Get memory budget.
+     * @return The memory budget
+     */
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Get average estimated size of items in collection.
+     * @return The average estimated size, specified in bytes, or 0 if unknown
+     */
+    long getAverageItemSize() {
+        return averageItemSize;
+    }
+
+    /**
+     * Update average estimated size of items in collection.  The average
+     * is smoothed, so that a single unusual fetch does not dominate it.
+     * @param itemSize The average estimated size of the latest items, specified in bytes
+     */
+    void updateAverageItemSize(
+        final long itemSize) {
+        averageItemSize = (averageItemSize == 0) ? itemSize : (3 * averageItemSize + itemSize) / 4;
+    }
+
+    /**
+     * Get share of fetch size to claim.
+     * @return The share of the fetch size to claim, between 0 and 1
+     */
+    double getClaimShare() {
+        return claimShare;
+    }
+
+    /**
+     * Set share of fetch size to claim.
+     * @param claimShare The share of the fetch size to claim, between 0 and 1
+     */
+    void setClaimShare(
+        final double claimShare) {
+        this.claimShare = claimShare;
+    }
+
+    /**
+     * Get partitions which are assigned to the session.
+     * @return The list of partitions, or null if the collection is not partitioned or the partitions have not been assigned yet
+     */
+    List<Integer> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Set partitions which are assigned to the session.
+     * @param partitions The list of partitions
+     */
+    void setPartitions(
+        final List<Integer> partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Determine whether the session holds the housekeeping lease of the collection.
+     * @return true if the session is the leader, false otherwise
+     */
+    boolean isLeader() {
+        return leader;
+    }
+
+    /**
+     * Set whether the session holds the housekeeping lease of the collection.
+     * @param leader true if the session is the leader, false otherwise
+     */
+    void setLeader(
+        final boolean leader) {
+        this.leader = leader;
+    }
+
+    /**
+     * Determine whether the session has stopped claiming items and is
+     * draining the items that it has already claimed.
+     * @return true if the session is draining, false otherwise
+     */
+    boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Set whether the session has stopped claiming items and is draining
+     * the items that it has already claimed.
+     * @param draining true if the session is draining, false otherwise
+     */
+    void setDraining(
+        final boolean draining) {
+        this.draining = draining;
+    }
+
+    /**
+     * Determine whether the session has released its unprocessed claims.
+     * @return true if the claims have been released, false otherwise
+     */
+    boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Set whether the session has released its unprocessed claims.
+     * @param released true if the claims have been released, false otherwise
+     */
+    void setReleased(
+        final boolean released) {
+        this.released = released;
+    }
+
+    /**
+     * Determine whether the session has marked items in error which have
+     * not been scheduled for retry yet.
+     * @return true if items are pending retry, false otherwise
+     */
+    boolean isRetryPending() {
+        return retryPending;
+    }
+
+    /**
+     * Set whether the session has marked items in error which have not been
+     * scheduled for retry yet.
+     * @param retryPending true if items are pending retry, false otherwise
+     */
+    void setRetryPending(
+        final boolean retryPending) {
+        this.retryPending = retryPending;
+    }
+
+    /**
+     * Set age of oldest pending item.
+     * @param oldestPendingAge The age of the oldest pending item, specified in milliseconds
+     */
+    void setOldestPendingAge(
+        final long oldestPendingAge) {
+        this.oldestPendingAge = oldestPendingAge;
+    }
+
 }
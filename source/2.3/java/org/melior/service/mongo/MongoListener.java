@@ -8,26 +8,39 @@
 */
 package org.melior.service.mongo;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import org.bson.Document;
 import org.melior.client.exception.RemotingException;
 import org.melior.client.mongo.MongoClient;
+import org.melior.client.mongo.MongoDeadline;
 import org.melior.client.mongo.MongoItem;
+import org.melior.client.mongo.MongoLayout;
+import org.melior.client.mongo.MongoMetrics;
+import org.melior.client.mongo.MongoProfile;
+import org.melior.client.mongo.MongoSchedule;
 import org.melior.client.mongo.ItemState;
 import org.melior.context.transaction.TransactionContext;
 import org.melior.logging.core.Logger;
 import org.melior.logging.core.LoggerFactory;
 import org.melior.service.core.ServiceState;
 import org.melior.service.exception.ExceptionType;
-import org.melior.util.collection.BoundedBlockingQueue;
 import org.melior.util.number.Clamp;
 import org.melior.util.object.ObjectUtil;
 import org.melior.util.thread.DaemonThread;
 import org.melior.util.thread.ThreadControl;
+import org.melior.util.time.Timer;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -56,23 +69,91 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * or fails atomically.
  * <p>
  * The listener may be configured with multiple threads to speed up processing.
+ * <p>
+ * The listener records the latency distribution of each phase of processing,
+ * namely claim, fetch, decode, queue wait, process and acknowledge, along with
+ * the number of processed and failed items, per collection.  The listener
+ * also records the end-to-end latency of each item, from the time that it was
+ * added to the collection until the time that it was processed, and periodically
+ * samples the age of the oldest pending item in each collection.  If a lag
+ * threshold is configured, then the listener suspends intake from collections
+ * which are within the threshold while any other collection of the listener
+ * lags behind by more than the threshold, so that the lagging collections
+ * may catch up.
+ * <p>
+ * Housekeeping which spans the whole cluster, namely counting the pending
+ * items and recovering the items of expired sessions, is only performed by
+ * the session which holds the lease of the collection.  The lease is a
+ * document in the {@code session} collection which the leader renews on
+ * every refresh.  If the leader fails then another session takes over the
+ * lease once it has expired.  The other sessions read the pending item
+ * statistics from the lease document.
+ * <p>
+ * The heartbeats of all the sessions of the listener are written with a
+ * single update, regardless of the number of collections.  The sessions
+ * are indexed on collection and heartbeat.  Sessions which have expired are
+ * removed by the leader once their items have been recovered, and sessions
+ * which have been abandoned while no leader was alive are eventually removed
+ * by a time-to-live index.
+ * <p>
+ * If a collection supports delayed items, then the listener claims the items
+ * which are due within the configured horizon ahead of time, and holds them
+ * in a timing wheel from which they are dispatched for processing when they
+ * are due, with millisecond precision.
+ * <p>
+ * The session which holds the lease of a collection also inserts the occurrences
+ * of the schedules in the collection as they become due.  If the collection
+ * supports delayed items, then the occurrences are inserted ahead of time, and
+ * are dispatched from the timing wheel when they are due.
+ * <p>
+ * If a retention is configured, then processed items are marked as done in
+ * bulk instead of being deleted, and are removed by a time-to-live index once
+ * the retention has elapsed.  Items which are processed individually are
+ * marked as done in batches of the configured size.  If a history collection
+ * is configured for a collection, then processed items are moved to the history
+ * collection in batches instead.
+ * <p>
+ * When the service stops, or when the listener is destroyed, the listener
+ * stops claiming new items and waits for the items that it has already
+ * claimed to be processed, up to the drain timeout.  Any items which remain
+ * unprocessed are then released for other sessions to claim immediately,
+ * rather than once the session has expired, and the session is deleted.
+ * The worker threads and the housekeeping threads of the collection then exit.
  * @author Melior
  * @since 2.3
  * @see MongoCollection
  * @see MongoItem
  */
-public class MongoListener<T> extends MongoListenerConfig {
+public class MongoListener<T> extends MongoListenerConfig implements BeanNameAware, DisposableBean {
+
+    private static final long SESSION_EXPIRY = 86400;
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private Class<T> entityClass;
 
     private MongoClient mongoClient;
+
+    private MongoClient controlClient;
+
+    private MongoLayout layout;
 
     private ObjectMapper objectMapper;
 
     private Map<String, MongoCollection<T>> collectionMap;
 
+    private MongoMetrics metrics;
+
+    private MemoryBudget memoryBudget;
+
+    private Set<MongoCollection<T>> startedCollections;
+
+    private Set<MongoSession> sessions;
+
+    private boolean heartbeating;
+
+    private volatile boolean stopping;
+
     /**
      * Constructor.
      * @param entityClass The entity class
@@ -92,6 +173,55 @@ public class MongoListener<T> extends MongoListenerConfig {
         objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
         collectionMap = new HashMap<String, MongoCollection<T>>();
+
+        startedCollections = ConcurrentHashMap.newKeySet();
+
+        sessions = ConcurrentHashMap.newKeySet();
+
+        metrics = new MongoMetrics("mongo");
+    }
+
+    /**
+     * Set bean name.  The bean name is used to tag the metrics.
+     * @param beanName The bean name
+     */
+    public void setBeanName(
+        final String beanName) {
+        metrics.owner(beanName);
+    }
+
+    /**
+     * Get metrics.
+     * @return The metrics
+     */
+    public MongoMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Stop listening to all collections.  Waits for the started collections
+     * to be drained and for their unprocessed claims to be released.
+     */
+    public void destroy() {
+
+        String methodName = "destroy";
+        long deadline;
+
+        logger.debug(methodName, "Stop listening to collections.");
+
+        for (MongoCollection<T> collection : startedCollections) {
+            collection.setDraining(true);
+        }
+
+        stopping = true;
+
+        deadline = System.currentTimeMillis() + getPollInterval() + getDrainTimeout() + getRequestTimeout();
+
+        while ((startedCollections.isEmpty() == false) && (System.currentTimeMillis() < deadline)) {
+
+            ThreadControl.wait(startedCollections, 100, TimeUnit.MILLISECONDS);
+        }
+
     }
 
     /**
@@ -108,7 +238,8 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         if (collection == null) {
 
-            collection = new MongoCollection<T>(this, collectionName, getThreads());
+            collection = new MongoCollection<T>(this, collectionName, getQueueCapacity(), getWaitStrategy(),
+                new MemoryBudget(getMemoryBudget(), getCollectionMemory()));
 
             collectionMap.put(collectionName, collection);
         }
@@ -130,7 +261,8 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         if (collection == null) {
 
-            collection = new MongoRequestInterceptor<T>(this, collectionName, getThreads());
+            collection = new MongoRequestInterceptor<T>(this, collectionName, getQueueCapacity(), getWaitStrategy(),
+                new MemoryBudget(getMemoryBudget(), getCollectionMemory()));
 
             collectionMap.put(collectionName, collection);
         }
@@ -147,11 +279,25 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         MongoSession session;
 
+        controlClient = mongoClient.control();
+
+        layout = mongoClient.getLayout();
+
         session = new MongoSession();
         session.setId(getSessionId());
         session.setCollection(collection.getName());
+        session.setCapacity(getThreads());
 
+        startedCollections.add(collection);
+
+        sessions.add(session);
+
+        startHeartbeat();
+
         final MongoCollection<T> c = collection;
+        metrics.gauge("melior.mongo.listener.pending", c.getName(), () -> c.getPendingItems().get());
+        metrics.gauge("melior.mongo.listener.oldest", c.getName(), () -> c.getOldestPendingAge());
+
         DaemonThread.create(() -> listen(c, session));
 
         for (int i = 0; i < getThreads(); i++) {
@@ -160,9 +306,18 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         DaemonThread.create(() -> refresh(c, session));
 
+        if (collection.supportsDelays() == true) {
+            DaemonThread.create(() -> dispatch(c));
+        }
+
         DaemonThread.create(() -> retry(c, session));
 
         DaemonThread.create(() -> recover(c));
+
+        if (layout == MongoLayout.COMPACT) {
+            DaemonThread.create(() -> migrate(c));
+        }
+
     }
 
     /**
@@ -179,17 +334,20 @@ public class MongoListener<T> extends MongoListenerConfig {
         @SuppressWarnings("unchecked")
         Class<MongoItem<T>> managedEntityClass = (Class<MongoItem<T>>) new MongoItem<T>(null, null).getClass();
         List<MongoItem<T>> mongoItems;
+        Timer timer;
+        int claimSize;
+        List<Object> ids;
 
         logger.debug(methodName, "Started listening to collection [", collection.getName(), "].");
 
-        while (ServiceState.isActive() == true) {
+        while ((ServiceState.isActive() == true) && (stopping == false)) {
 
-            while ((ServiceState.isSuspended() == true) || (session.isActive() == false)) {
+            while (((ServiceState.isSuspended() == true) || (session.isActive() == false)) && (stopping == false)) {
 
                 ThreadControl.wait(collection, 100, TimeUnit.MILLISECONDS);
             }
 
-            while (collection.getStateSupplier().get() == ListenerState.ACTIVE) {
+            while ((collection.getStateSupplier().get() == ListenerState.ACTIVE) && (ServiceState.isActive() == true) && (stopping == false)) {
                 logger.debug(methodName, "Collection [", collection.getName(), "]: total=", collection.getTotalItems().get(),
                     ", failed=", collection.getFailedItems().get(), ", pending=", collection.getPendingItems().get());
 
@@ -198,48 +356,64 @@ public class MongoListener<T> extends MongoListenerConfig {
                     if (prepared == false) {
                         logger.debug(methodName, "Set index for collection [", collection.getName(), "].");
 
-                        mongoClient.setIndex(collection.getName(), new Document()
-                            .append("state", 1)
-                            .append("session", 1)
-                            .append("eligible", 1));
+                        setIndexes(collection);
 
                         prepared = true;
                     }
 
+                    if (collection.getMemoryBudget().isExhausted() == true) {
+                        logger.debug(methodName, "Memory budget for collection [", collection.getName(), "] has been exhausted.");
+
+                        break;
+                    }
+
+                    if (isYielding(collection) == true) {
+                        logger.debug(methodName, "Collection [", collection.getName(), "] yields to collections which lag behind.");
+
+                        break;
+                    }
+
+                    claimSize = getClaimSize(collection);
+
                     logger.debug(methodName, "Allocate new items in collection [", collection.getName(), "].");
 
-                    if (collection.supportsDelays() == true) {
-
-                        mongoClient.update(collection.getName(),
-                            Query.query(Criteria.where("").andOperator(
-                                Criteria.where("state").is(ItemState.NEW.getId()),
-                                Criteria.where("session").is(null),
-                                Criteria.where("eligible").lte(System.currentTimeMillis())))
-                                .limit(getFetchSize()),
-                            Update.update("session", session.getId()));
-                    }
-                    else {
+                    timer = Timer.ofNanos().start();
+
+                    ids = claim(collection, session, claimSize);
 
-                        mongoClient.update(collection.getName(),
-                            Query.query(Criteria.where("").andOperator(
-                                Criteria.where("state").is(ItemState.NEW.getId()),
-                                Criteria.where("session").is(null)))
-                                .limit(getFetchSize()),
-                            Update.update("session", session.getId()));
+                    record(collection, "claim", timer, true);
+
+                    if (ids.size() == 0) {
+                        break;
                     }
-
-                    mongoItems = mongoClient.find(collection.getName(),
+
+                    timer = Timer.ofNanos().start();
+
+                    mongoItems = controlClient.find(collection.getName(),
                         Query.query(Criteria.where("").andOperator(
-                            Criteria.where("state").is(ItemState.NEW.getId()),
-                            Criteria.where("session").is(session.getId())))
-                            .limit(getFetchSize()), managedEntityClass);
+                            Criteria.where("_id").in(ids),
+                            Criteria.where(layout.field("state")).is(ItemState.BUSY.getId()),
+                            Criteria.where(layout.field("session")).is(session.getId())))
+                            .with(Sort.by(Sort.Direction.ASC, layout.field("eligible"))), managedEntityClass);
+
+                    record(collection, "fetch", timer, true);
 
                     if (mongoItems.size() == 0) {
-                        break;
+                        continue;
                     }
+
+                    acquire(collection, mongoItems);
 
-                    updateState(collection, mongoItems, ItemState.BUSY.getId());
-
+                    if (collection.supportsDelays() == true) {
+
+                        mongoItems = schedule(collection, mongoItems);
+
+                        if (mongoItems.size() == 0) {
+                            continue;
+                        }
+
+                    }
+
                     if (collection.getBatchProcessor() != null) {
 
                         processBatches(collection, mongoItems);
@@ -259,9 +433,245 @@ public class MongoListener<T> extends MongoListenerConfig {
 
             }
 
+            complete(collection, true);
+
             ThreadControl.wait(collection, getPollInterval(), TimeUnit.MILLISECONDS);
         }
 
+        drain(collection, session);
+    }
+
+    /**
+     * Drain collection.  Stops claiming new items, waits for the items which
+     * have already been claimed to be processed, up to the drain timeout, and
+     * then releases any unprocessed claims with a single update, gives up the
+     * lease of the collection and deletes the session.
+     * @param collection The collection
+     * @param session The session
+     */
+    private void drain(
+        final MongoCollection<T> collection,
+        final MongoSession session) {
+
+        String methodName = "drain";
+        long deadline;
+
+        logger.debug(methodName, "Drain collection [", collection.getName(), "].  In-flight items = ", collection.getInflightItems().get());
+
+        collection.setDraining(true);
+
+        release(collection, collection.getTimingWheel().clear());
+
+        deadline = System.currentTimeMillis() + getDrainTimeout();
+
+        while ((collection.getInflightItems().get() > 0) && (System.currentTimeMillis() < deadline)) {
+
+            ThreadControl.wait(collection, 100, TimeUnit.MILLISECONDS);
+        }
+
+        collection.setReleased(true);
+
+        complete(collection, true);
+
+        try {
+            logger.debug(methodName, "Release unprocessed items from session [", session.getId(), "] in collection [", collection.getName(), "].");
+
+            controlClient.update(collection.getName(),
+                Query.query(Criteria.where("").andOperator(
+                    Criteria.where(layout.field("state")).is(ItemState.BUSY.getId()),
+                    Criteria.where(layout.field("session")).is(session.getId()))),
+                Update.update(layout.field("state"), ItemState.NEW.getId())
+                    .unset(layout.field("session")));
+
+            if (collection.isRetryPending() == true) {
+
+                controlClient.update(collection.getName(),
+                    Query.query(Criteria.where("").andOperator(
+                        Criteria.where(layout.field("state")).is(ItemState.ERROR.getId()),
+                        Criteria.where(layout.field("session")).is(session.getId()))),
+                    Update.update(layout.field("state"), ItemState.NEW.getId())
+                        .unset(layout.field("session")));
+            }
+
+            if (collection.isLeader() == true) {
+                logger.debug(methodName, "Release lease for collection [", collection.getName(), "].");
+
+                controlClient.update(getSessionCollection(),
+                    Query.query(Criteria.where("").andOperator(
+                        Criteria.where("_id").is(getLeaseId(collection)),
+                        Criteria.where("leader").is(session.getId()))),
+                    Update.update("expiry", 0L));
+
+                collection.setLeader(false);
+            }
+
+            logger.debug(methodName, "Delete session [", session.getId(), "] for collection [", collection.getName(), "].");
+
+            sessions.remove(session);
+
+            controlClient.delete(getSessionCollection(), session);
+        }
+        catch (Throwable exception) {
+            logger.error(methodName, "Failed to release unprocessed items: ", exception.getMessage(), exception);
+        }
+        finally {
+
+            startedCollections.remove(collection);
+        }
+
+        logger.debug(methodName, "Stopped listening to collection [", collection.getName(), "].");
+    }
+
+    /**
+     * Claim new items in collection for session.  Multi-document updates ignore
+     * the limit of the query, so the identifiers of the oldest unclaimed items
+     * are found first, in order of eligibility, and only those items are then
+     * claimed.  Items which are claimed by another session in the meantime are
+     * skipped, so at most the requested number of items is claimed and the
+     * backlog is spread evenly across the sessions.  Claimed items are marked
+     * as busy, so new items are never claimed, and in the compact layout the
+     * identifiers are found from the claim index alone, without a predicate
+     * on the session.  If the collection is
+     * partitioned, then only items in the partitions which are assigned to the
+     * session, or items without a partition, are claimed.  If the collection
+     * supports delayed items, then items which are due within the horizon are
+     * claimed as well.
+     * @param collection The collection
+     * @param session The session
+     * @param claimSize The maximum number of items to claim
+     * @return The list of identifiers of the items which may have been claimed
+     * @throws RemotingException if unable to claim the items
+     */
+    private List<Object> claim(
+        final MongoCollection<T> collection,
+        final MongoSession session,
+        final int claimSize) throws RemotingException {
+
+        Query query;
+        List<Integer> partitions;
+        List<Integer> partitionCriteria;
+        List<Document> documents;
+        List<Object> ids;
+
+        if (collection.supportsDelays() == true) {
+
+            query = Query.query(Criteria.where("").andOperator(
+                Criteria.where(layout.field("state")).is(ItemState.NEW.getId()),
+                Criteria.where(layout.field("eligible")).lte(System.currentTimeMillis() + getHorizon())));
+        }
+        else {
+
+            query = Query.query(Criteria.where(layout.field("state")).is(ItemState.NEW.getId()));
+        }
+
+        if (layout == MongoLayout.STANDARD) {
+
+            query.addCriteria(Criteria.where(layout.field("session")).is(null));
+        }
+
+        partitions = collection.getPartitions();
+
+        if (partitions != null) {
+
+            partitionCriteria = new ArrayList<Integer>(partitions);
+            partitionCriteria.add(null);
+
+            query.addCriteria(Criteria.where(layout.field("partition")).in(partitionCriteria));
+        }
+
+        query.with(Sort.by(Sort.Direction.ASC, layout.field("eligible"))).limit(claimSize);
+        query.fields().include("_id");
+
+        documents = controlClient.find(collection.getName(), query, Document.class);
+
+        ids = new ArrayList<Object>(documents.size());
+
+        if (documents.size() == 0) {
+            return ids;
+        }
+
+        for (Document document : documents) {
+            ids.add(document.get("_id"));
+        }
+
+        controlClient.update(collection.getName(),
+            Query.query(Criteria.where("").andOperator(
+                Criteria.where("_id").in(ids),
+                Criteria.where(layout.field("state")).is(ItemState.NEW.getId()),
+                Criteria.where(layout.field("session")).is(null))),
+            Update.update(layout.field("state"), ItemState.BUSY.getId())
+                .set(layout.field("session"), session.getId()));
+
+        return ids;
+    }
+
+    /**
+     * Schedule delayed items which are not due yet in the timing wheel of
+     * collection.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     * @return The list of managed items which are due
+     */
+    private List<MongoItem<T>> schedule(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) {
+
+        List<MongoItem<T>> dueItems;
+
+        dueItems = new ArrayList<MongoItem<T>>(mongoItems.size());
+
+        for (MongoItem<T> mongoItem : mongoItems) {
+
+            if ((mongoItem.getEligible() == null)
+                || (collection.getTimingWheel().add(mongoItem, mongoItem.getEligible()) == false)) {
+
+                dueItems.add(mongoItem);
+            }
+
+        }
+
+        return dueItems;
+    }
+
+    /**
+     * Dispatch delayed items from timing wheel of collection when they are due.
+     * Sleeps until the next delayed item is due.
+     * @param collection The collection
+     */
+    private void dispatch(
+        final MongoCollection<T> collection) {
+
+        String methodName = "dispatch";
+        List<MongoItem<T>> mongoItems;
+
+        while (collection.isReleased() == false) {
+
+            try {
+
+                mongoItems = collection.getTimingWheel().take(getPollInterval());
+
+                if (mongoItems.size() > 0) {
+                    logger.debug(methodName, "Dispatch ", mongoItems.size(), " delayed items in collection [", collection.getName(), "].");
+
+                    if (collection.getBatchProcessor() != null) {
+
+                        processBatches(collection, mongoItems);
+                    }
+
+                    else if (collection.getSingletonProcessor() != null) {
+
+                        processSingles(collection, mongoItems);
+                    }
+
+                }
+
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to dispatch delayed items: ", exception.getMessage(), exception);
+            }
+
+        }
+
     }
 
     /**
@@ -273,7 +683,7 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         String methodName = "process";
 
-        while (ServiceState.isActive() == true) {
+        while (collection.isReleased() == false) {
 
             while (ServiceState.isSuspended() == true) {
 
@@ -306,7 +716,9 @@ public class MongoListener<T> extends MongoListenerConfig {
     }
 
     /**
-     * Process items in batches.
+     * Process items in batches.  Once the listener stops, the batches which
+     * have not been handed to the worker threads yet are no longer handed over,
+     * and are left for the drain to release.
      * @param collection The collection
      * @param mongoItems The list of managed items
      * @throws Exception if unable to process the items
@@ -315,35 +727,37 @@ public class MongoListener<T> extends MongoListenerConfig {
         final MongoCollection<T> collection,
         final List<MongoItem<T>> mongoItems) throws Exception {
 
-        BoundedBlockingQueue<List<MongoItem<T>>> queue;
+        RingBuffer<List<MongoItem<T>>> queue;
         int start;
         int end;
 
         queue = collection.getBatchQueue();
 
-        if (mongoItems.size() <= getBatchSize()) {
-
-            queue.add(mongoItems);
+        for (MongoItem<T> mongoItem : mongoItems) {
+            mongoItem.setQueued(System.nanoTime());
         }
-        else {
+
+        start = 0;
+        end = Math.min(getBatchSize(), mongoItems.size());
 
-            start = 0;
-            end = getBatchSize();
+        while (start < mongoItems.size()) {
 
-            while (start < mongoItems.size()) {
+            if (queue.add(mongoItems.subList(start, end), () -> isListening(collection)) == false) {
 
-                queue.add(mongoItems.subList(start, end));
+                release(collection, mongoItems.subList(start, mongoItems.size()));
 
-                start += getBatchSize();
-                end = Clamp.clampInt(start + getBatchSize(), start, mongoItems.size());
+                return;
             }
 
+            start += getBatchSize();
+            end = Clamp.clampInt(start + getBatchSize(), start, mongoItems.size());
         }
 
     }
 
     /**
-     * Process batches of items.
+     * Process batches of items.  Returns without waiting for further batches
+     * once the collection has been released and its queue is empty.
      * @param collection The collection
      * @throws RemotingException if unable to process the items
      */
@@ -354,12 +768,25 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         try {
 
-            mongoItems = collection.getBatchQueue().remove();
+            mongoItems = collection.getBatchQueue().remove(() -> collection.isReleased() == false);
         }
         catch (InterruptedException exception) {
             throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Thread has been interrupted.");
         }
+
+        if (mongoItems == null) {
+            return;
+        }
+
+        if (collection.isReleased() == true) {
+
+            release(collection, mongoItems);
+
+            return;
+        }
 
+        metrics.record("melior.mongo.listener", collection.getName(), "queue", true, System.nanoTime() - mongoItems.get(0).getQueued());
+
         processBatch(collection, mongoItems);
     }
 
@@ -376,32 +803,60 @@ public class MongoListener<T> extends MongoListenerConfig {
         String methodName = "processBatch";
         List<T> items;
         TransactionContext transactionContext;
+        Timer timer;
+        boolean processed = false;
 
         try {
+
+            timer = Timer.ofNanos().start();
 
             items = new ArrayList<T>(mongoItems.size());
 
             for (MongoItem<T> mongoItem : mongoItems) {
-                items.add(objectMapper.convertValue(mongoItem.getItem(), entityClass));
+                items.add(objectMapper.convertValue(mongoClient.loadPayload(collection.getName(), mongoItem), entityClass));
             }
 
+            record(collection, "decode", timer, true);
+
             transactionContext = TransactionContext.get();
             transactionContext.startTransaction();
             transactionContext.setTransactionId(getTransactionId(null));
             transactionContext.setCorrelationId(transactionContext.getTransactionId());
 
+            timer = Timer.ofNanos().start();
+
             try {
 
                 collection.getBatchProcessor().process(items);
+
+                processed = true;
             }
             finally {
 
                 transactionContext.reset();
+
+                MongoDeadline.clear();
+
+                MongoProfile.clear();
+
+                record(collection, "process", timer, processed);
             }
+
+            timer = Timer.ofNanos().start();
 
-            delete(collection, mongoItems);
+            acknowledge(collection, mongoItems);
 
+            record(collection, "ack", timer, true);
+
+            for (MongoItem<T> mongoItem : mongoItems) {
+                recordLatency(collection, mongoItem);
+            }
+
+            release(collection, mongoItems);
+
             collection.getTotalItems().increment(mongoItems.size());
+
+            metrics.increment("melior.mongo.listener.items", collection.getName(), "processed", mongoItems.size());
 
             collection.getPendingItems().decrement(mongoItems.size());
         }
@@ -416,13 +871,19 @@ public class MongoListener<T> extends MongoListenerConfig {
                 }
 
             }
+            else {
+
+                release(collection, mongoItems);
+            }
 
         }
 
     }
 
     /**
-     * Process items individually.
+     * Process items individually.  Once the listener stops, the items which
+     * have not been handed to the worker threads yet are no longer handed over,
+     * and are left for the drain to release.
      * @param collection The collection
      * @param mongoItems The list of managed items
      * @throws Exception if unable to process the items
@@ -431,19 +892,41 @@ public class MongoListener<T> extends MongoListenerConfig {
         final MongoCollection<T> collection,
         final List<MongoItem<T>> mongoItems) throws Exception {
 
-        BoundedBlockingQueue<MongoItem<T>> queue;
+        RingBuffer<MongoItem<T>> queue;
+        MongoItem<T> mongoItem;
 
         queue = collection.getSingletonQueue();
 
-        for (MongoItem<T> mongoItem : mongoItems) {
+        for (int i = 0; i < mongoItems.size(); i++) {
 
-            queue.add(mongoItem);
+            mongoItem = mongoItems.get(i);
+            mongoItem.setQueued(System.nanoTime());
+
+            if (queue.add(mongoItem, () -> isListening(collection)) == false) {
+
+                release(collection, mongoItems.subList(i, mongoItems.size()));
+
+                return;
+            }
+
         }
 
     }
 
     /**
-     * Process items from collection's queue.
+     * Determine whether items may still be handed to the worker threads of
+     * collection.  Items are no longer handed over once the listener stops.
+     * @param collection The collection
+     * @return true if items may be handed over, false otherwise
+     */
+    private boolean isListening(
+        final MongoCollection<T> collection) {
+        return (ServiceState.isActive() == true) && (stopping == false) && (collection.isDraining() == false);
+    }
+
+    /**
+     * Process items from collection's queue.  Returns without waiting for
+     * further items once the collection has been released and its queue is empty.
      * @param collection The collection
      * @throws RemotingException if unable to process the items
      */
@@ -454,12 +937,25 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         try {
 
-            mongoItem = collection.getSingletonQueue().remove();
+            mongoItem = collection.getSingletonQueue().remove(() -> collection.isReleased() == false);
         }
         catch (InterruptedException exception) {
             throw new RemotingException(ExceptionType.LOCAL_APPLICATION, "Thread has been interrupted.");
         }
+
+        if (mongoItem == null) {
+            return;
+        }
 
+        if (collection.isReleased() == true) {
+
+            release(collection, mongoItem);
+
+            return;
+        }
+
+        metrics.record("melior.mongo.listener", collection.getName(), "queue", true, System.nanoTime() - mongoItem.getQueued());
+
         processSingle(collection, mongoItem);
     }
 
@@ -475,45 +971,79 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         T item;
         TransactionContext transactionContext;
+        Timer timer;
+        boolean processed = false;
 
         collection.getTotalItems().increment();
 
         try {
 
-            item = objectMapper.convertValue(mongoItem.getItem(), entityClass);
+            timer = Timer.ofNanos().start();
+
+            item = objectMapper.convertValue(mongoClient.loadPayload(collection.getName(), mongoItem), entityClass);
+
+            record(collection, "decode", timer, true);
 
             transactionContext = TransactionContext.get();
             transactionContext.startTransaction();
             transactionContext.setTransactionId(getTransactionId(ObjectUtil.coalesce(mongoItem.getTransaction(), mongoItem.getCorrelation())));
             transactionContext.setCorrelationId(ObjectUtil.coalesce(mongoItem.getCorrelation(), transactionContext.getTransactionId()));
 
+            timer = Timer.ofNanos().start();
+
             try {
 
                 collection.getSingletonProcessor().process(item);
+
+                processed = true;
             }
             finally {
 
                 transactionContext.reset();
+
+                MongoDeadline.clear();
+
+                MongoProfile.clear();
+
+                record(collection, "process", timer, processed);
             }
+
+            timer = Timer.ofNanos().start();
 
-            delete(collection, mongoItem);
+            acknowledge(collection, mongoItem);
 
+            record(collection, "ack", timer, true);
+
+            recordLatency(collection, mongoItem);
+
             collection.getPendingItems().decrement();
+
+            metrics.increment("melior.mongo.listener.items", collection.getName(), "processed", 1);
         }
         catch (Throwable exception) {
 
             collection.getFailedItems().increment();
+
+            metrics.increment("melior.mongo.listener.items", collection.getName(), "failed", 1);
 
             updateState(collection, mongoItem, ItemState.ERROR.getId(), exception.getMessage());
 
+            collection.setRetryPending(true);
+
             collection.getPendingItems().decrement();
         }
+        finally {
+
+            release(collection, mongoItem);
+        }
 
     }
 
     /**
-     * Refresh collection.  Updates the heartbeat for the session and
-     * updates the number of pending items in the collection.
+     * Refresh collection.  Updates the recent throughput of the session when
+     * it has changed materially, renews the lease of the collection, updates
+     * the number of pending items in the collection, and updates the share of
+     * the fetch size to claim.
      * @param collection The collection
      * @param session The session
      */
@@ -523,8 +1053,18 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         String methodName = "refresh";
         long pending;
+        long now;
+        List<MongoSession> mongoSessions;
+        long total;
+        long lastTotal;
+        long lastTime;
+        double throughput = 0;
+        boolean leader;
+
+        lastTotal = collection.getTotalItems().get();
+        lastTime = System.currentTimeMillis();
 
-        while (ServiceState.isActive() == true) {
+        while (collection.isReleased() == false) {
 
             while (ServiceState.isSuspended() == true) {
 
@@ -532,31 +1072,69 @@ public class MongoListener<T> extends MongoListenerConfig {
             }
 
             try {
-                logger.debug(methodName, "Update heartbeat for session [", session.getId(), "] for collection [", collection.getName(), "].");
 
-                try {
-
-                    session.setHeartbeat(System.currentTimeMillis());
-                    mongoClient.update("session", session);
-
-                    session.setActive(true);
+                now = System.currentTimeMillis();
+                total = collection.getTotalItems().get();
+
+                if ((total > lastTotal) && (now > lastTime)) {
+                    throughput = getThroughput(throughput, (total - lastTotal) * 1000.0 / (now - lastTime));
                 }
-                catch (Throwable exception) {
-
-                    session.setActive(false);
 
-                    throw exception;
+                lastTotal = total;
+                lastTime = now;
+
+                if ((session.isActive() == true) && (Math.abs(throughput - session.getThroughput()) > session.getThroughput() * 0.1)) {
+                    logger.debug(methodName, "Update throughput for session [", session.getId(), "] for collection [", collection.getName(), "].");
+
+                    controlClient.update(getSessionCollection(),
+                        Query.query(Criteria.where("_id").is(session.getId())),
+                        Update.update("throughput", throughput));
+
+                    session.setThroughput(throughput);
                 }
+
+                if ((collection.getStateSupplier().get() == ListenerState.ACTIVE) && (collection.isDraining() == false) && (session.isActive() == true)) {
 
-                if (collection.getStateSupplier().get() == ListenerState.ACTIVE) {
-                    logger.debug(methodName, "Count number of pending items in collection [", collection.getName(), "].");
-
-                    pending = mongoClient.count(collection.getName(), Query.query(
-                        Criteria.where("").orOperator(
-                        Criteria.where("state").is(ItemState.NEW.getId()),
-                        Criteria.where("state").is(ItemState.BUSY.getId()))));
+                    leader = renewLease(collection, session);
+
+                    if (leader != collection.isLeader()) {
+                        logger.debug(methodName, "Session [", session.getId(), "] ", (leader == true) ? "acquired" : "lost",
+                            " lease for collection [", collection.getName(), "].");
+                    }
 
-                    collection.getPendingItems().reset(pending);
+                    collection.setLeader(leader);
+
+                    if (leader == true) {
+                        logger.debug(methodName, "Count number of pending items in collection [", collection.getName(), "].");
+
+                        pending = controlClient.count(collection.getName(), Query.query(
+                            Criteria.where(layout.field("state")).is(ItemState.NEW.getId())));
+
+                        pending += controlClient.count(collection.getName(), Query.query(
+                            Criteria.where(layout.field("state")).is(ItemState.BUSY.getId())));
+
+                        collection.getPendingItems().reset(pending);
+
+                        logger.debug(methodName, "Find oldest pending item in collection [", collection.getName(), "].");
+
+                        collection.setOldestPendingAge(getOldestPendingAge(collection, System.currentTimeMillis()));
+
+                        materialize(collection);
+                    }
+                    else {
+                        readLease(collection);
+                    }
+
+                    now = System.currentTimeMillis();
+
+                    mongoSessions = controlClient.find(getSessionCollection(),
+                        Query.query(Criteria.where("").andOperator(
+                            Criteria.where("collection").is(collection.getName()),
+                            Criteria.where("heartbeat").gt(now - getInactivityTimeout()))), MongoSession.class);
+
+                    updateClaimShare(collection, session, mongoSessions);
+
+                    assignPartitions(collection, session, mongoSessions);
                 }
 
             }
@@ -570,7 +1148,294 @@ public class MongoListener<T> extends MongoListenerConfig {
     }
 
     /**
-     * Schedule items in collection for retry.
+     * Start heartbeat of sessions, if it has not been started yet.
+     */
+    private synchronized void startHeartbeat() {
+
+        if (heartbeating == false) {
+
+            DaemonThread.create(() -> heartbeat());
+
+            heartbeating = true;
+        }
+
+    }
+
+    /**
+     * Update heartbeat of all sessions of the listener.  The heartbeat is
+     * written with a single update which only sets the time of the heartbeat.
+     * If any of the sessions does not exist, because it has not been written
+     * yet or because it has been removed, then the sessions are written in full.
+     */
+    private void heartbeat() {
+
+        String methodName = "heartbeat";
+        boolean prepared = false;
+        List<MongoSession> activeSessions;
+        List<String> ids;
+        long now;
+        long matched;
+
+        while ((ServiceState.isActive() == true) || (startedCollections.isEmpty() == false)) {
+
+            while (ServiceState.isSuspended() == true) {
+
+                ThreadControl.wait(sessions, 100, TimeUnit.MILLISECONDS);
+            }
+
+            activeSessions = new ArrayList<MongoSession>(sessions);
+
+            try {
+
+                if (prepared == false) {
+                    logger.debug(methodName, "Set indexes for session collection [", getSessionCollection(), "].");
+
+                    setSessionIndexes();
+
+                    prepared = true;
+                }
+
+                if (activeSessions.size() > 0) {
+                    logger.debug(methodName, "Update heartbeat for ", activeSessions.size(), " sessions.");
+
+                    now = System.currentTimeMillis();
+
+                    ids = new ArrayList<String>(activeSessions.size());
+
+                    for (MongoSession session : activeSessions) {
+                        ids.add(session.getId());
+                    }
+
+                    matched = controlClient.update(getSessionCollection(),
+                        Query.query(Criteria.where("_id").in(ids)),
+                        Update.update("heartbeat", now)
+                            .set("refreshed", new Date(now)));
+
+                    if (matched < ids.size()) {
+
+                        for (MongoSession session : activeSessions) {
+                            logger.debug(methodName, "Write session [", session.getId(), "] for collection [", session.getCollection(), "].");
+
+                            controlClient.upsert(getSessionCollection(),
+                                Query.query(Criteria.where("_id").is(session.getId())),
+                                Update.update("heartbeat", now)
+                                    .set("refreshed", new Date(now))
+                                    .set("collection", session.getCollection())
+                                    .set("capacity", session.getCapacity())
+                                    .set("throughput", session.getThroughput()));
+                        }
+
+                    }
+
+                    for (MongoSession session : activeSessions) {
+                        session.setHeartbeat(now);
+                        session.setActive(true);
+                    }
+
+                }
+
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to update heartbeat: ", exception.getMessage(), exception);
+
+                for (MongoSession session : activeSessions) {
+                    session.setActive(false);
+                }
+
+            }
+
+            ThreadControl.wait(sessions, getRefreshInterval(), TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    /**
+     * Set indexes on session collection.  The compound index supports the
+     * queries for live and expired sessions.  Expired sessions are removed by
+     * the leader once their items have been recovered, as their claims may
+     * only be found through them.  The time-to-live index on the date of the
+     * last heartbeat only removes sessions which have been abandoned for at
+     * least a day, and for at least ten times the inactivity timeout, long
+     * after a live leader would have recovered their items, so that the
+     * session collection does not grow without bound.  Lease documents have
+     * no heartbeat date, so they are never removed.
+     * @throws RemotingException if unable to set the indexes
+     */
+    private void setSessionIndexes() throws RemotingException {
+
+        controlClient.setIndex(getSessionCollection(), new Document()
+            .append("collection", 1)
+            .append("heartbeat", 1));
+
+        controlClient.setExpiryIndex(getSessionCollection(), "refreshed",
+            Math.max(SESSION_EXPIRY, 10L * getInactivityTimeout() / 1000));
+    }
+
+    /**
+     * Insert occurrences of schedules in collection which are due.  Each occurrence
+     * is a copy of the template document of the schedule, with an identifier which
+     * is derived from the time of the occurrence.  The template is first advanced
+     * past the occurrences, on condition that it has not been advanced already,
+     * and the occurrences are only inserted by the session which advanced it, so
+     * that a session which has lost the lease cannot insert an occurrence again
+     * after it has been processed and deleted.  An occurrence is therefore lost
+     * if the session fails between advancing the template and inserting it.
+     * <p>
+     * If the collection supports delayed items, then occurrences are inserted
+     * ahead of time within the horizon, and are dispatched from the timing wheel
+     * when they are due.  Otherwise occurrences are only inserted once they are
+     * due, so they may be up to a refresh interval late.
+     * @param collection The collection
+     * @throws RemotingException if unable to insert the occurrences
+     */
+    private void materialize(
+        final MongoCollection<T> collection) throws RemotingException {
+
+        String methodName = "materialize";
+        long now;
+        long limit;
+        List<Document> templates;
+        String schedule;
+        long eligible;
+        long occurrence;
+        List<Long> occurrences;
+        Update update;
+
+        now = System.currentTimeMillis();
+
+        limit = (collection.supportsDelays() == true) ? now + getHorizon() + getRefreshInterval() : now;
+
+        templates = controlClient.find(collection.getName(), Query.query(Criteria.where("").andOperator(
+            Criteria.where(layout.field("state")).is(ItemState.SCHEDULED.getId()),
+            Criteria.where(layout.field("eligible")).lte(limit)))
+            .limit(getFetchSize()), Document.class);
+
+        for (Document template : templates) {
+
+            schedule = template.getString(layout.field("schedule"));
+            eligible = ((Number) template.get(layout.field("eligible"))).longValue();
+            occurrence = eligible;
+            occurrences = new ArrayList<Long>();
+
+            while ((occurrence <= limit) && (occurrences.size() < getBatchSize())) {
+
+                occurrences.add(occurrence);
+
+                occurrence = MongoSchedule.next(schedule, occurrence, now);
+            }
+
+            if (controlClient.update(collection.getName(),
+                Query.query(Criteria.where("").andOperator(
+                    Criteria.where("_id").is(template.get("_id")),
+                    Criteria.where(layout.field("eligible")).is(eligible))),
+                Update.update(layout.field("eligible"), occurrence)) == 0) {
+
+                continue;
+            }
+
+            for (Long dueOccurrence : occurrences) {
+                logger.debug(methodName, "Insert occurrence of schedule [", template.get("_id"), "] in collection [", collection.getName(), "].");
+
+                update = new Update();
+
+                for (Map.Entry<String, Object> entry : template.entrySet()) {
+
+                    if ((entry.getKey().equals("_id") == false)
+                        && (entry.getKey().equals(layout.field("schedule")) == false)
+                        && (entry.getKey().equals(layout.field("transaction")) == false)
+                        && (entry.getKey().equals(layout.field("correlation")) == false)
+                        && (entry.getKey().equals(layout.field("state")) == false)
+                        && (entry.getKey().equals(layout.field("eligible")) == false)
+                        && (entry.getKey().equals(layout.field("enqueued")) == false)) {
+
+                        update.setOnInsert(entry.getKey(), entry.getValue());
+                    }
+
+                }
+
+                update.setOnInsert(layout.field("state"), ItemState.NEW.getId())
+                    .setOnInsert(layout.field("eligible"), dueOccurrence)
+                    .setOnInsert(layout.field("enqueued"), dueOccurrence);
+
+                controlClient.upsert(collection.getName(),
+                    Query.query(Criteria.where("_id").is(template.get("_id") + "@" + dueOccurrence)), update);
+            }
+
+        }
+
+    }
+
+    /**
+     * Renew lease of collection.  The lease is acquired if it is not held
+     * by any session, or if the lease of the current leader has expired.
+     * The pending item statistics which were sampled during the previous
+     * refresh are published with the lease, for the other sessions to read.
+     * @param collection The collection
+     * @param session The session
+     * @return true if the session holds the lease, false otherwise
+     * @throws RemotingException if unable to renew the lease
+     */
+    private boolean renewLease(
+        final MongoCollection<T> collection,
+        final MongoSession session) throws RemotingException {
+
+        long now;
+
+        now = System.currentTimeMillis();
+
+        return controlClient.upsert(getSessionCollection(),
+            Query.query(Criteria.where("_id").is(getLeaseId(collection)).orOperator(
+                Criteria.where("leader").is(session.getId()),
+                Criteria.where("expiry").lt(now))),
+            Update.update("leader", session.getId())
+                .set("expiry", now + getLeaseTime())
+                .set("pending", collection.getPendingItems().get())
+                .set("oldest", collection.getOldestPendingAge()));
+    }
+
+    /**
+     * Read pending item statistics of collection from the lease.
+     * @param collection The collection
+     * @throws RemotingException if unable to read the lease
+     */
+    private void readLease(
+        final MongoCollection<T> collection) throws RemotingException {
+
+        List<Document> leases;
+        Document lease;
+
+        leases = controlClient.find(getSessionCollection(), Query.query(Criteria.where("_id").is(getLeaseId(collection))), Document.class);
+
+        if (leases.size() > 0) {
+            lease = leases.get(0);
+
+            if (lease.get("pending") instanceof Number) {
+                collection.getPendingItems().reset(((Number) lease.get("pending")).longValue());
+            }
+
+            if (lease.get("oldest") instanceof Number) {
+                collection.setOldestPendingAge(((Number) lease.get("oldest")).longValue());
+            }
+
+        }
+
+    }
+
+    /**
+     * Get identifier of lease document of collection.
+     * @param collection The collection
+     * @return The lease identifier
+     */
+    private String getLeaseId(
+        final MongoCollection<T> collection) {
+        return "leader-" + collection.getName();
+    }
+
+    /**
+     * Schedule items in collection for retry.  Only items which failed in
+     * this session are retried, so every session retries its own items.
+     * Items in error are not indexed in the compact layout, so the items
+     * are only looked for once the session has marked items in error.
      * @param collection The collection
      * @param session The session
      */
@@ -580,29 +1445,33 @@ public class MongoListener<T> extends MongoListenerConfig {
 
         String methodName = "retry";
 
-        while (ServiceState.isActive() == true) {
+        while ((ServiceState.isActive() == true) && (stopping == false)) {
 
-            while (ServiceState.isSuspended() == true) {
+            while ((ServiceState.isSuspended() == true) && (stopping == false)) {
 
                 ThreadControl.wait(collection, 100, TimeUnit.MILLISECONDS);
             }
 
             try {
 
-                if (collection.getStateSupplier().get() == ListenerState.ACTIVE) {
+                if ((collection.getStateSupplier().get() == ListenerState.ACTIVE) && (collection.isRetryPending() == true)) {
                     logger.debug(methodName, "Mark items with exceptions as new in collection [", collection.getName(), "].");
+
+                    collection.setRetryPending(false);
 
-                    mongoClient.update(collection.getName(),
+                    controlClient.update(collection.getName(),
                         Query.query(Criteria.where("").andOperator(
-                            Criteria.where("state").is(ItemState.ERROR.getId()),
-                            Criteria.where("session").is(session.getId()))),
-                        Update.update("state", ItemState.NEW.getId())
-                            .set("session", null));
+                            Criteria.where(layout.field("session")).is(session.getId()),
+                            Criteria.where(layout.field("state")).is(ItemState.ERROR.getId()))),
+                        Update.update(layout.field("state"), ItemState.NEW.getId())
+                            .unset(layout.field("session")));
                 }
 
             }
             catch (Throwable exception) {
                 logger.error(methodName, "Failed to schedule items for retry: ", exception.getMessage(), exception);
+
+                collection.setRetryPending(true);
             }
 
             ThreadControl.wait(collection, getRetryInterval(), TimeUnit.MILLISECONDS);
@@ -611,7 +1480,8 @@ public class MongoListener<T> extends MongoListenerConfig {
     }
 
     /**
-     * Recover abandoned items in collection.
+     * Recover abandoned items in collection.  Only the session which holds
+     * the lease of the collection recovers abandoned items.
      * @param collection The collection
      */
     private void recover(
@@ -620,19 +1490,19 @@ public class MongoListener<T> extends MongoListenerConfig {
         String methodName = "recover";
         List<MongoSession> mongoSessions;
 
-        while (ServiceState.isActive() == true) {
+        while ((ServiceState.isActive() == true) && (stopping == false)) {
 
-            while (ServiceState.isSuspended() == true) {
+            while ((ServiceState.isSuspended() == true) && (stopping == false)) {
 
                 ThreadControl.wait(collection, 100, TimeUnit.MILLISECONDS);
             }
 
             try {
 
-                if (collection.getStateSupplier().get() == ListenerState.ACTIVE) {
+                if ((collection.getStateSupplier().get() == ListenerState.ACTIVE) && (collection.isLeader() == true)) {
                     logger.debug(methodName, "Find expired sessions for collection [", collection.getName(), "].");
 
-                    mongoSessions = mongoClient.find("session",
+                    mongoSessions = controlClient.find(getSessionCollection(),
                         Query.query(Criteria.where("").andOperator(
                             Criteria.where("collection").is(collection.getName()),
                             Criteria.where("heartbeat").lte(System.currentTimeMillis() - getInactivityTimeout()))), MongoSession.class);
@@ -642,16 +1512,18 @@ public class MongoListener<T> extends MongoListenerConfig {
                         for (MongoSession mongoSession : mongoSessions) {
                             logger.debug(methodName, "Recover abandoned items from session [", mongoSession.getId(), "] in collection [", collection.getName(), "].");
 
-                            mongoClient.update(collection.getName(),
-                                Query.query(Criteria.where("session").is(mongoSession.getId())),
-                                Update.update("state", ItemState.NEW.getId())
-                                    .set("session", null));
+                            controlClient.update(collection.getName(),
+                                Query.query(Criteria.where("").andOperator(
+                                    Criteria.where(layout.field("session")).is(mongoSession.getId()),
+                                    Criteria.where(layout.field("state")).ne(ItemState.DONE.getId()))),
+                                Update.update(layout.field("state"), ItemState.NEW.getId())
+                                    .unset(layout.field("session")));
                         }
 
                         for (MongoSession mongoSession : mongoSessions) {
                             logger.debug(methodName, "Delete session [", mongoSession.getId(), "] for collection [", collection.getName(), "].");
 
-                            mongoClient.delete("session", mongoSession);
+                            controlClient.delete(getSessionCollection(), mongoSession);
                         }
 
                     }
@@ -668,6 +1540,140 @@ public class MongoListener<T> extends MongoListenerConfig {
 
     }
 
+    /**
+     * Migrate items in collection from the standard layout to the compact layout.
+     * The items are migrated in batches, until no items in the standard layout
+     * remain.  Items in the standard layout are only claimed once they have been
+     * migrated.
+     * @param collection The collection
+     */
+    private void migrate(
+        final MongoCollection<T> collection) {
+
+        String methodName = "migrate";
+        List<Document> documents;
+        List<Object> ids;
+        long migrated = 0;
+
+        while ((ServiceState.isActive() == true) && (stopping == false)) {
+
+            while ((ServiceState.isSuspended() == true) && (stopping == false)) {
+
+                ThreadControl.wait(collection, 100, TimeUnit.MILLISECONDS);
+            }
+
+            try {
+
+                if (collection.getStateSupplier().get() == ListenerState.ACTIVE) {
+                    logger.debug(methodName, "Migrate items to compact layout in collection [", collection.getName(), "].");
+
+                    documents = controlClient.find(collection.getName(), legacyQuery(), Document.class);
+
+                    if (documents.size() == 0) {
+                        logger.debug(methodName, "Migrated ", migrated, " items to compact layout in collection [", collection.getName(), "].");
+
+                        return;
+                    }
+
+                    ids = new ArrayList<Object>(documents.size());
+
+                    for (Document document : documents) {
+                        ids.add(document.get("_id"));
+                    }
+
+                    controlClient.update(collection.getName(), Query.query(Criteria.where("_id").in(ids)), MongoLayout.migration());
+
+                    migrated += ids.size();
+
+                    continue;
+                }
+
+            }
+            catch (Throwable exception) {
+                logger.error(methodName, "Failed to migrate items: ", exception.getMessage(), exception);
+            }
+
+            ThreadControl.wait(collection, getRecoverInterval(), TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+    /**
+     * Set indexes on collection.  In the standard layout a single index supports
+     * all queries of the listener.  In the compact layout, partial indexes only
+     * cover the items which are new and the items which are busy, so that the
+     * items which are in error or done do not occupy the indexes.  The claim
+     * index holds the eligibility, the partition and the identifier after the
+     * state, so that the identifiers of the items to claim are found in order
+     * of eligibility from the index alone, and the new items are counted from
+     * the index alone.  The index of busy items holds the session after the
+     * state, so that the busy items are counted from the index alone.  The
+     * indexes of the compact layout which these indexes replace are dropped.
+     * Indexes of the standard layout are left as they are.
+     * @param collection The collection
+     * @throws RemotingException if unable to set the indexes
+     */
+    private void setIndexes(
+        final MongoCollection<T> collection) throws RemotingException {
+
+        if (layout == MongoLayout.COMPACT) {
+
+            controlClient.setIndex(collection.getName(), new Document()
+                .append(layout.field("state"), 1)
+                .append(layout.field("eligible"), 1)
+                .append(layout.field("partition"), 1)
+                .append("_id", 1),
+                new Document(layout.field("state"), ItemState.NEW.getId()));
+
+            controlClient.setIndex(collection.getName(), new Document()
+                .append(layout.field("state"), 1)
+                .append(layout.field("session"), 1),
+                new Document(layout.field("state"), ItemState.BUSY.getId()));
+
+            controlClient.dropIndex(collection.getName(), layout.field("session") + "_1_" + layout.field("eligible") + "_1");
+
+            controlClient.dropIndex(collection.getName(), layout.field("session") + "_1_" + layout.field("eligible") + "_1_" + layout.field("partition") + "_1");
+
+            controlClient.dropIndex(collection.getName(), layout.field("session") + "_1_" + layout.field("state") + "_1");
+
+            controlClient.setIndex(collection.getName(), new Document()
+                .append(layout.field("state"), 1)
+                .append(layout.field("eligible"), 1),
+                new Document(layout.field("state"), ItemState.SCHEDULED.getId()));
+        }
+        else {
+
+            controlClient.setIndex(collection.getName(), new Document()
+                .append("state", 1)
+                .append("session", 1)
+                .append("eligible", 1));
+        }
+
+        if (getRetention() > 0) {
+
+            controlClient.setExpiryIndex(collection.getName(), layout.field("completed"), getRetention());
+        }
+
+    }
+
+    /**
+     * Get query for batch of items in the standard layout.  The query uses the
+     * index of the standard layout, if it still exists.
+     * @return The query
+     */
+    private Query legacyQuery() {
+
+        Query query;
+
+        query = Query.query(Criteria.where(MongoLayout.STANDARD.field("state"))
+            .in(ItemState.NEW.getId(), ItemState.BUSY.getId(), ItemState.ERROR.getId(), ItemState.SCHEDULED.getId()))
+            .limit(1000);
+
+        query.fields().include("_id");
+
+        return query;
+    }
+
     /**
      * Update state of item in collection.
      * @param collection The collection
@@ -678,71 +1684,648 @@ public class MongoListener<T> extends MongoListenerConfig {
      */
     private void updateState(
         final MongoCollection<T> collection,
-        final MongoItem mongoItem,
+        final MongoItem<T> mongoItem,
         final String state,
         final String stateMessage) throws RemotingException {
 
         mongoItem.setState(state);
         mongoItem.setStateMessage(stateMessage);
 
-        mongoClient.update(collection.getName(), mongoItem);
+        controlClient.update(collection.getName(), claimed(Collections.singletonList(mongoItem)),
+            Update.update(layout.field("state"), state)
+                .set(layout.field("stateMessage"), stateMessage));
     }
 
     /**
-     * Update state of items in collection.
-     * @param collection The collection
+     * Get query for items which are still claimed by the session which fetched
+     * them, and are being processed.  Items which have been released by a drain
+     * that timed out may have been claimed by another session in the meantime,
+     * so the acknowledgement of such items must not touch them.
      * @param mongoItems The list of managed items
-     * @param state The item state
-     * @throws RemotingException if unable to update the state of the items
+     * @return The query
      */
-    private void updateState(
-        final MongoCollection<T> collection,
-        final List<? extends MongoItem> mongoItems,
-        final String state) throws RemotingException {
-
+    private Query claimed(
+        final List<MongoItem<T>> mongoItems) {
+
+        return Query.query(Criteria.where("").andOperator(
+            Criteria.where("_id").in(getIds(mongoItems)),
+            Criteria.where(layout.field("session")).is(mongoItems.get(0).getSession()),
+            Criteria.where(layout.field("state")).is(ItemState.BUSY.getId())));
+    }
+
+    /**
+     * Get identifiers of items.
+     * @param mongoItems The list of managed items
+     * @return The list of item identifiers
+     */
+    private List<String> getIds(
+        final List<MongoItem<T>> mongoItems) {
+
         List<String> ids;
-
+
         ids = new ArrayList<String>(mongoItems.size());
 
-        for (MongoItem mongoItem : mongoItems) {
+        for (MongoItem<T> mongoItem : mongoItems) {
             ids.add(mongoItem.getId());
         }
-
-        mongoClient.update(collection.getName(), Query.query(Criteria.where("_id").in(ids)), Update.update("state", state));
+
+        return ids;
     }
 
     /**
-     * Delete item from collection.
+     * Delete item from collection, if it is still claimed by the session.
      * @param collection The collection
      * @param mongoItem The managed item
      * @throws RemotingException if unable to delete the item
      */
     private void delete(
         final MongoCollection<T> collection,
-        final MongoItem mongoItem) throws RemotingException {
+        final MongoItem<T> mongoItem) throws RemotingException {
 
-        mongoClient.delete(collection.getName(), mongoItem);
+        if ((controlClient.delete(collection.getName(), claimed(Collections.singletonList(mongoItem))) > 0)
+            && (mongoItem.getPayload() != null)) {
+
+            mongoClient.deletePayloads(collection.getName(), Collections.singletonList(mongoItem));
+        }
+
     }
 
     /**
-     * Delete items from collection.
+     * Acknowledge item which has been processed.  The item is deleted, unless
+     * a retention or a history collection is configured, in which case the item
+     * is queued to be marked as done or archived with the next batch of completed
+     * items.
      * @param collection The collection
-     * @param mongoItems The list of managed items
+     * @param mongoItem The managed item
+     * @throws RemotingException if unable to delete the item
+     */
+    private void acknowledge(
+        final MongoCollection<T> collection,
+        final MongoItem<T> mongoItem) throws RemotingException {
+
+        if ((getRetention() == 0) && (collection.isArchived() == false)) {
+
+            delete(collection, mongoItem);
+        }
+        else {
+
+            collection.getCompletedQueue().add(mongoItem);
+
+            complete(collection, false);
+        }
+
+    }
+
+    /**
+     * Acknowledge items which have been processed.  The items are archived if
+     * a history collection is configured, otherwise they are deleted, unless
+     * a retention is configured, in which case the items are marked as done.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     * @throws RemotingException if unable to acknowledge the items
+     */
+    private void acknowledge(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) throws RemotingException {
+
+        if (collection.isArchived() == true) {
+
+            archive(collection, mongoItems);
+        }
+        else if (getRetention() == 0) {
+
+            delete(collection, mongoItems);
+        }
+        else {
+
+            complete(collection, mongoItems);
+        }
+
+    }
+
+    /**
+     * Mark queued items which have been processed individually as done, or
+     * archive them.  The items are marked in batches of the configured size.
+     * Items which do not fill a batch are only marked when the queue is flushed.
+     * If the items cannot be marked, then they remain claimed by the session,
+     * and are processed again once they have been released or recovered.
+     * @param collection The collection
+     * @param flush true to mark all queued items, false to only mark full batches
+     */
+    private void complete(
+        final MongoCollection<T> collection,
+        final boolean flush) {
+
+        String methodName = "complete";
+        List<MongoItem<T>> mongoItems;
+
+        try {
+
+            while ((collection.getCompletedQueue().size() >= getBatchSize())
+                || ((flush == true) && (collection.getCompletedQueue().isEmpty() == false))) {
+
+                mongoItems = new ArrayList<MongoItem<T>>(getBatchSize());
+
+                collection.getCompletedQueue().drainTo(mongoItems, getBatchSize());
+
+                if (mongoItems.size() == 0) {
+                    break;
+                }
+
+                if (collection.isArchived() == true) {
+
+                    archive(collection, mongoItems);
+                }
+                else {
+
+                    complete(collection, mongoItems);
+                }
+
+            }
+
+        }
+        catch (Throwable exception) {
+            logger.error(methodName, "Failed to mark items as done: ", exception.getMessage(), exception);
+        }
+
+    }
+
+    /**
+     * Mark items as done, if they are still claimed by the session.  The items
+     * are released from the session, so that they are neither recovered nor
+     * counted as pending, and are removed by the time-to-live index once the
+     * retention has elapsed.  Payloads which were offloaded are deleted
+     * immediately, and the items no longer reference them.  If some of the
+     * items are no longer claimed by the session, then their payloads may be
+     * in use by another session, so no payloads are deleted.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     * @throws RemotingException if unable to mark the items
+     */
+    private void complete(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) throws RemotingException {
+
+        long matched;
+
+        matched = controlClient.update(collection.getName(), claimed(mongoItems),
+            Update.update(layout.field("state"), ItemState.DONE.getId())
+                .set(layout.field("completed"), new Date())
+                .unset(layout.field("session"))
+                .unset(layout.field("payload"))
+                .unset(layout.field("payloadSize")));
+
+        if (matched == mongoItems.size()) {
+            mongoClient.deletePayloads(collection.getName(), mongoItems);
+        }
+
+    }
+
+    /**
+     * Move items to history collection of collection.  The time-to-live index
+     * is set on the history collection when it is first used, which includes
+     * every new bucket of a history collection which is bucketed by time.
+     * Payloads which were offloaded are deleted by the archive, as they are
+     * not archived.  The items are first marked as done, on condition that
+     * they are still claimed by the session, and only the items which have
+     * been marked are archived.  The marked items keep the session, so that
+     * they may be told apart from items which were completed by another
+     * session, and so that they remain done if the archive fails.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     * @throws RemotingException if unable to archive the items
+     */
+    private void archive(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) throws RemotingException {
+
+        String historyCollection;
+        List<MongoItem<T>> doneItems;
+        Query query;
+        List<Document> documents;
+        Set<String> doneIds;
+
+        historyCollection = collection.getHistoryCollection();
+
+        if (historyCollection.equals(collection.getPreparedHistoryCollection()) == false) {
+
+            if (collection.getHistoryRetention() > 0) {
+                controlClient.setExpiryIndex(historyCollection, layout.field("completed"), collection.getHistoryRetention());
+            }
+
+            collection.setPreparedHistoryCollection(historyCollection);
+        }
+
+        doneItems = mongoItems;
+
+        if (controlClient.update(collection.getName(), claimed(mongoItems),
+            Update.update(layout.field("state"), ItemState.DONE.getId())
+                .set(layout.field("completed"), new Date())) < mongoItems.size()) {
+
+            query = Query.query(Criteria.where("").andOperator(
+                Criteria.where("_id").in(getIds(mongoItems)),
+                Criteria.where(layout.field("session")).is(mongoItems.get(0).getSession()),
+                Criteria.where(layout.field("state")).is(ItemState.DONE.getId())));
+            query.fields().include("_id");
+
+            documents = controlClient.find(collection.getName(), query, Document.class);
+
+            doneIds = new HashSet<String>();
+
+            for (Document document : documents) {
+                doneIds.add(document.get("_id").toString());
+            }
+
+            doneItems = new ArrayList<MongoItem<T>>(doneIds.size());
+
+            for (MongoItem<T> mongoItem : mongoItems) {
+
+                if (doneIds.contains(mongoItem.getId()) == true) {
+                    doneItems.add(mongoItem);
+                }
+
+            }
+
+            if (doneItems.size() == 0) {
+                return;
+            }
+
+        }
+
+        controlClient.archive(collection.getName(), historyCollection, doneItems);
+    }
+
+    /**
+     * Delete items from collection, if they are still claimed by the session.
+     * If some of the items are no longer claimed by the session, then their
+     * payloads may be in use by another session, so no payloads are deleted.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
      * @throws RemotingException if unable to delete the items
      */
     private void delete(
         final MongoCollection<T> collection,
-        final List<? extends MongoItem> mongoItems) throws RemotingException {
+        final List<MongoItem<T>> mongoItems) throws RemotingException {
 
-        List<String> ids;
+        if (controlClient.delete(collection.getName(), claimed(mongoItems)) == mongoItems.size()) {
+            mongoClient.deletePayloads(collection.getName(), mongoItems);
+        }
 
-        ids = new ArrayList<String>(mongoItems.size());
+    }
 
-        for (MongoItem mongoItem : mongoItems) {
-            ids.add(mongoItem.getId());
+    /**
+     * Get number of items to claim from collection.  The fetch size is scaled
+     * by the claim share of the session.  If the collection has a memory budget,
+     * then the number of items is further limited to the number of items of
+     * average size which fit in the remaining budget.  While the average size
+     * is still unknown, a single batch is claimed.
+     * @param collection The collection
+     * @return The number of items to claim
+     */
+    private int getClaimSize(
+        final MongoCollection<T> collection) {
+
+        int fetchSize;
+        long available;
+        long averageItemSize;
+
+        fetchSize = (int) Math.max(1, Math.ceil(getFetchSize() * collection.getClaimShare()));
+
+        available = collection.getMemoryBudget().available();
+
+        if (available == Long.MAX_VALUE) {
+            return fetchSize;
         }
-
-        mongoClient.delete(collection.getName(), Query.query(Criteria.where("_id").in(ids)));
+
+        averageItemSize = collection.getAverageItemSize();
+
+        if (averageItemSize == 0) {
+            return Math.min(fetchSize, getBatchSize());
+        }
+
+        return (int) Math.max(1, Math.min(fetchSize, available / averageItemSize));
+    }
+
+    /**
+     * Update share of fetch size which the session claims from collection, so
+     * that every session holds roughly the same number of seconds of work.
+     * The share of a session is the ratio of its processing rate to the highest
+     * processing rate across the live sessions of the collection.  The processing
+     * rate of a session is its recent throughput while busy.  While the throughput
+     * of a session is still unknown, its rate is estimated from its capacity and
+     * the average throughput per thread of the other sessions, or from its
+     * capacity alone if no throughput is known yet.
+     * @param collection The collection
+     * @param session The session
+     * @param mongoSessions The list of live sessions of the collection
+     */
+    private void updateClaimShare(
+        final MongoCollection<T> collection,
+        final MongoSession session,
+        final List<MongoSession> mongoSessions) {
+
+        double totalThroughput = 0;
+        long totalCapacity = 0;
+        double threadRate;
+        double rate;
+        double maximumRate = 0;
+
+        for (MongoSession mongoSession : mongoSessions) {
+
+            if ((mongoSession.getThroughput() > 0) && (mongoSession.getCapacity() > 0)) {
+
+                totalThroughput += mongoSession.getThroughput();
+                totalCapacity += mongoSession.getCapacity();
+            }
+
+        }
+
+        threadRate = (totalCapacity == 0) ? 0 : totalThroughput / totalCapacity;
+
+        for (MongoSession mongoSession : mongoSessions) {
+            maximumRate = Math.max(maximumRate, getRate(mongoSession, threadRate));
+        }
+
+        rate = getRate(session, threadRate);
+
+        collection.setClaimShare(((maximumRate == 0) || (rate == 0)) ? 1.0 : Math.min(1.0, rate / maximumRate));
+    }
+
+    /**
+     * Assign partitions of collection to session, if the collection is partitioned.
+     * The partitions are assigned to the live sessions of the collection by
+     * consistent hashing, so the partitions are rebalanced whenever a session
+     * joins or expires.
+     * @param collection The collection
+     * @param session The session
+     * @param mongoSessions The list of live sessions of the collection
+     */
+    private void assignPartitions(
+        final MongoCollection<T> collection,
+        final MongoSession session,
+        final List<MongoSession> mongoSessions) {
+
+        String methodName = "assignPartitions";
+        int partitions;
+        Set<String> sessionIds;
+        List<Integer> assigned;
+
+        partitions = mongoClient.getPartitions(collection.getName());
+
+        if (partitions == 0) {
+            return;
+        }
+
+        sessionIds = new HashSet<String>();
+        sessionIds.add(session.getId());
+
+        for (MongoSession mongoSession : mongoSessions) {
+            sessionIds.add(mongoSession.getId());
+        }
+
+        assigned = new PartitionRing(sessionIds).getPartitions(session.getId(), partitions);
+
+        if (assigned.equals(collection.getPartitions()) == false) {
+            logger.debug(methodName, "Session [", session.getId(), "] assigned partitions ", assigned, " of collection [", collection.getName(), "].");
+
+            collection.setPartitions(assigned);
+        }
+
+    }
+
+    /**
+     * Get processing rate of session.
+     * @param session The session
+     * @param threadRate The average throughput per thread across the sessions, or 0 if unknown
+     * @return The processing rate
+     */
+    private double getRate(
+        final MongoSession session,
+        final double threadRate) {
+
+        if (session.getThroughput() > 0) {
+            return session.getThroughput();
+        }
+
+        return (threadRate == 0) ? session.getCapacity() : session.getCapacity() * threadRate;
+    }
+
+    /**
+     * Get smoothed throughput.
+     * @param throughput The smoothed throughput so far, or 0 if unknown
+     * @param sample The latest sample of the throughput
+     * @return The smoothed throughput
+     */
+    private double getThroughput(
+        final double throughput,
+        final double sample) {
+        return (throughput == 0) ? sample : (3 * throughput + sample) / 4;
+    }
+
+    /**
+     * Account for memory of items which have been fetched from collection.
+     * Payloads which were offloaded to GridFS are only loaded by the workers,
+     * but are accounted for up front, at twice their encoded size for the
+     * downloaded bytes and the decoded item.  If the size of a payload is not
+     * known, then the payload threshold is used, as smaller payloads are not
+     * offloaded.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     */
+    private void acquire(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) {
+
+        long estimatedSize;
+        long totalSize = 0;
+
+        for (MongoItem<T> mongoItem : mongoItems) {
+
+            estimatedSize = MemoryBudget.estimate((mongoItem.getBinary() == null) ? mongoItem.getItem() : mongoItem.getBinary());
+
+            if (mongoItem.getPayload() != null) {
+                estimatedSize += 2L * ((mongoItem.getPayloadSize() == null) ? mongoClient.getPayloadThreshold() : mongoItem.getPayloadSize());
+            }
+
+            mongoItem.setEstimatedSize(estimatedSize);
+
+            totalSize += estimatedSize;
+        }
+
+        collection.getMemoryBudget().acquire(totalSize);
+
+        collection.getInflightItems().increment(mongoItems.size());
+
+        collection.updateAverageItemSize(totalSize / mongoItems.size());
+    }
+
+    /**
+     * Release memory of items which have been processed.
+     * @param collection The collection
+     * @param mongoItems The list of managed items
+     */
+    private void release(
+        final MongoCollection<T> collection,
+        final List<MongoItem<T>> mongoItems) {
+
+        long totalSize = 0;
+
+        for (MongoItem<T> mongoItem : mongoItems) {
+            totalSize += mongoItem.getEstimatedSize();
+        }
+
+        collection.getMemoryBudget().release(totalSize);
+
+        collection.getInflightItems().decrement(mongoItems.size());
+    }
+
+    /**
+     * Release memory of item which has been processed.
+     * @param collection The collection
+     * @param mongoItem The managed item
+     */
+    private void release(
+        final MongoCollection<T> collection,
+        final MongoItem<T> mongoItem) {
+
+        collection.getMemoryBudget().release(mongoItem.getEstimatedSize());
+
+        collection.getInflightItems().decrement();
+    }
+
+    /**
+     * Get memory budget across all collections.  Created on first use, once
+     * the listener has been configured.
+     * @return The memory budget
+     */
+    private synchronized MemoryBudget getMemoryBudget() {
+
+        if (memoryBudget == null) {
+            memoryBudget = new MemoryBudget(null, getListenerMemory());
+        }
+
+        return memoryBudget;
+    }
+
+    /**
+     * Determine whether collection must yield to other collections of the
+     * listener.  A collection yields if a lag threshold is configured, and
+     * the collection is within the threshold while another collection lags
+     * behind by more than the threshold.
+     * @param collection The collection
+     * @return true if the collection must yield, false otherwise
+     */
+    private boolean isYielding(
+        final MongoCollection<T> collection) {
+
+        if ((getLagThreshold() == 0) || (collection.getOldestPendingAge() > getLagThreshold())) {
+            return false;
+        }
+
+        for (MongoCollection<T> startedCollection : startedCollections) {
+
+            if ((startedCollection != collection) && (startedCollection.getOldestPendingAge() > getLagThreshold())) {
+                return true;
+            }
+
+        }
+
+        return false;
+    }
+
+    /**
+     * Get age of oldest pending item in collection.  Items which have been
+     * claimed, but have not been processed yet, are still pending, so the
+     * oldest new item and the oldest busy item are both considered.
+     * @param collection The collection
+     * @param now The current time
+     * @return The age of the oldest pending item, specified in milliseconds, or 0 if no items are pending
+     * @throws RemotingException if unable to find the oldest pending item
+     */
+    private long getOldestPendingAge(
+        final MongoCollection<T> collection,
+        final long now) throws RemotingException {
+
+        long oldestPendingAge = 0;
+        List<Document> documents;
+
+        for (ItemState state : new ItemState[] {ItemState.NEW, ItemState.BUSY}) {
+
+            documents = controlClient.find(collection.getName(), oldestPendingQuery(state, now), Document.class);
+
+            if (documents.size() > 0) {
+                oldestPendingAge = Math.max(oldestPendingAge, now - ((Number) documents.get(0).get(layout.field("eligible"))).longValue());
+            }
+
+        }
+
+        return oldestPendingAge;
+    }
+
+    /**
+     * Get query for oldest pending item in state.  Items which are not delayed
+     * are eligible from the time that they are added to the collection, so the
+     * oldest pending item is the one with the earliest time of eligibility.
+     * Delayed items which have been claimed ahead of time are not due yet, so
+     * they are excluded.  The query for new items is satisfied by reading a
+     * single entry from the claim index of the collection.  The busy items are
+     * bounded by the items which the sessions hold in memory.
+     * @param state The item state
+     * @param now The current time
+     * @return The query
+     */
+    private Query oldestPendingQuery(
+        final ItemState state,
+        final long now) {
+
+        Query query;
+
+        query = Query.query(Criteria.where("").andOperator(
+            Criteria.where(layout.field("state")).is(state.getId()),
+            Criteria.where(layout.field("eligible")).lte(now)))
+            .with(Sort.by(Sort.Direction.ASC, layout.field("eligible")))
+            .limit(1);
+
+        if ((layout == MongoLayout.STANDARD) && (state == ItemState.NEW)) {
+
+            query.addCriteria(Criteria.where(layout.field("session")).is(null));
+        }
+
+        query.fields().include(layout.field("eligible")).exclude("_id");
+
+        return query;
+    }
+
+    /**
+     * Record end-to-end latency of item.
+     * @param collection The collection
+     * @param mongoItem The managed item
+     */
+    private void recordLatency(
+        final MongoCollection<T> collection,
+        final MongoItem<T> mongoItem) {
+
+        if (mongoItem.getEnqueued() != null) {
+            metrics.record("melior.mongo.listener", collection.getName(), "latency", true,
+                TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - mongoItem.getEnqueued()));
+        }
+
+    }
+
+    /**
+     * Record duration of processing phase.
+     * @param collection The collection
+     * @param phase The processing phase
+     * @param timer The timer
+     * @param success true if the phase succeeded, false otherwise
+     */
+    private void record(
+        final MongoCollection<T> collection,
+        final String phase,
+        final Timer timer,
+        final boolean success) {
+
+        metrics.record("melior.mongo.listener", collection.getName(), phase, success, timer.elapsedTime(TimeUnit.NANOSECONDS));
     }
 
     /**
@@ -24,6 +24,14 @@ public class MongoListenerConfig extends ClientConfig {
     private int batchSize = 100;
 
     private int threads = 1;
+
+    private int queueCapacity = 0;
+
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    private long collectionMemory = 0;
+
+    private long listenerMemory = 0;
 
     private int retryInterval = 60 * 1000;
 
@@ -31,6 +39,18 @@ public class MongoListenerConfig extends ClientConfig {
 
     private int recoverInterval = 60 * 1000;
 
+    private int leaseTime = 30 * 1000;
+
+    private int drainTimeout = 30 * 1000;
+
+    private String sessionCollection = "session";
+
+    private int retention = 0;
+
+    private int horizon = 5 * 1000;
+
+    private int lagThreshold = 0;
+
     /**
      * Constructor.
      */
@@ -107,6 +127,74 @@ public class MongoListenerConfig extends ClientConfig {
         this.threads = Clamp.clampInt(threads, 1, Integer.MAX_VALUE);
     }
 
+    /**
+     * Get queue capacity.  Defaults to the number of threads.
+     * @return The queue capacity
+     */
+    public int getQueueCapacity() {
+        return (queueCapacity == 0) ? threads : queueCapacity;
+    }
+
+    /**
+     * Set queue capacity.
+     * @param queueCapacity The queue capacity
+     */
+    public void setQueueCapacity(
+        final int queueCapacity) {
+        this.queueCapacity = Clamp.clampInt(queueCapacity, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get wait strategy.
+     * @return The wait strategy
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Set wait strategy.
+     * @param waitStrategy The wait strategy
+     */
+    public void setWaitStrategy(
+        final WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Get memory budget per collection.
+     * @return The memory budget per collection, specified in bytes, or 0 if unlimited
+     */
+    public long getCollectionMemory() {
+        return collectionMemory;
+    }
+
+    /**
+     * Set memory budget per collection.
+     * @param collectionMemory The memory budget per collection, specified in megabytes, or 0 if unlimited
+     */
+    public void setCollectionMemory(
+        final int collectionMemory) {
+        this.collectionMemory = Clamp.clampInt(collectionMemory, 0, Integer.MAX_VALUE) * 1024L * 1024L;
+    }
+
+    /**
+     * Get memory budget across all collections.
+     * @return The memory budget across all collections, specified in bytes, or 0 if unlimited
+     */
+    public long getListenerMemory() {
+        return listenerMemory;
+    }
+
+    /**
+     * Set memory budget across all collections.
+     * @param listenerMemory The memory budget across all collections, specified in megabytes, or 0 if unlimited
+     */
+    public void setListenerMemory(
+        final int listenerMemory) {
+        this.listenerMemory = Clamp.clampInt(listenerMemory, 0, Integer.MAX_VALUE) * 1024L * 1024L;
+    }
+
     /**
      * Get retry interval.
      * @return The retry interval
@@ -158,4 +246,117 @@ public class MongoListenerConfig extends ClientConfig {
         this.recoverInterval = Clamp.clampInt(recoverInterval * 1000, 0, Integer.MAX_VALUE);
     }
 
+    /**
+     * Get lease time.
+     * @return The lease time
+     */
+    public int getLeaseTime() {
+        return leaseTime;
+    }
+
+    /**
+     * Set lease time.  The lease time bounds the time that it takes for
+     * another session to take over housekeeping of a collection when the
+     * leader fails.
+     * @param leaseTime The lease time, specified in seconds
+     */
+    public void setLeaseTime(
+        final int leaseTime) {
+        this.leaseTime = Clamp.clampInt(leaseTime * 1000, 1000, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get drain timeout.
+     * @return The drain timeout
+     */
+    public int getDrainTimeout() {
+        return drainTimeout;
+    }
+
+    /**
+     * Set drain timeout.  The drain timeout bounds the time that the listener
+     * waits for claimed items to be processed when it stops, before it releases
+     * the remaining items for other sessions to claim.
+     * @param drainTimeout The drain timeout, specified in seconds
+     */
+    public void setDrainTimeout(
+        final int drainTimeout) {
+        this.drainTimeout = Clamp.clampInt(drainTimeout * 1000, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get session collection.
+     * @return The name of the collection which holds the sessions
+     */
+    public String getSessionCollection() {
+        return sessionCollection;
+    }
+
+    /**
+     * Set session collection.
+     * @param sessionCollection The name of the collection which holds the sessions
+     */
+    public void setSessionCollection(
+        final String sessionCollection) {
+        this.sessionCollection = sessionCollection;
+    }
+
+    /**
+     * Get retention.  The retention is held in seconds, so that retentions
+     * of more than 24 days do not overflow.
+     * @return The retention, in seconds
+     */
+    public int getRetention() {
+        return retention;
+    }
+
+    /**
+     * Set retention.  If the retention is greater than zero, then processed
+     * items are marked as done instead of being deleted, and are removed by
+     * a time-to-live index once the retention has elapsed.
+     * @param retention The retention, specified in seconds
+     */
+    public void setRetention(
+        final int retention) {
+        this.retention = Clamp.clampInt(retention, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get horizon.
+     * @return The horizon
+     */
+    public int getHorizon() {
+        return horizon;
+    }
+
+    /**
+     * Set horizon.  Delayed items which are due within the horizon are claimed
+     * ahead of time, and are dispatched for processing when they are due.
+     * @param horizon The horizon, specified in seconds
+     */
+    public void setHorizon(
+        final int horizon) {
+        this.horizon = Clamp.clampInt(horizon * 1000, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get lag threshold.
+     * @return The lag threshold
+     */
+    public int getLagThreshold() {
+        return lagThreshold;
+    }
+
+    /**
+     * Set lag threshold.  If the lag threshold is greater than zero, then
+     * intake from collections which are within the threshold is suspended
+     * while the oldest pending item of any other collection of the listener
+     * is older than the threshold.
+     * @param lagThreshold The lag threshold, specified in seconds
+     */
+    public void setLagThreshold(
+        final int lagThreshold) {
+        this.lagThreshold = Clamp.clampInt(lagThreshold * 1000, 0, Integer.MAX_VALUE);
+    }
+
 }
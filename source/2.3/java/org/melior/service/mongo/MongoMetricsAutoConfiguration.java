@@ -0,0 +1,66 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import org.melior.client.mongo.MongoClient;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Auto-configuration which binds the metrics of every {@code MongoClient} and
+ * every {@code MongoListener} in the application context to the Micrometer
+ * {@code MeterRegistry} of the application.  The registry is resolved lazily,
+ * when the first metric is recorded, so that the client and listener beans
+ * do not force early initialization of the registry.
+ * <p>
+ * If the application context does not contain a registry then the global
+ * Micrometer registry is used.
+ * @author Melior
+ * @since 2.3
+ * @see MongoClient
+ * @see MongoListener
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnClass(MeterRegistry.class)
+public class MongoMetricsAutoConfiguration {
+
+    /**
+     * Create post processor which binds the metrics to the registry.
+     * @param registryProvider The registry provider
+     * @return The post processor
+     */
+    @Bean
+    public static BeanPostProcessor mongoMetricsPostProcessor(
+        final ObjectProvider<MeterRegistry> registryProvider) {
+
+        return new BeanPostProcessor() {
+
+            public Object postProcessAfterInitialization(
+                final Object bean,
+                final String beanName) {
+
+                if (bean instanceof MongoClient) {
+
+                    ((MongoClient) bean).getMetrics().registry(() -> registryProvider.getIfUnique());
+                }
+                else if (bean instanceof MongoListener) {
+
+                    ((MongoListener<?>) bean).getMetrics().registry(() -> registryProvider.getIfUnique());
+                }
+
+                return bean;
+            }
+
+        };
+    }
+
+}
@@ -45,13 +45,17 @@ public class MongoRequestInterceptor<T> extends MongoCollection<T> {
      * @param listener The listener
      * @param name The name of the collection
      * @param capacity The capacity of the collection
+     * @param waitStrategy The wait strategy of the collection's queues
+     * @param memoryBudget The memory budget of the collection
      */
     MongoRequestInterceptor(
         final MongoListener<T> listener,
         final String name,
-        final int capacity) {
+        final int capacity,
+        final WaitStrategy waitStrategy,
+        final MemoryBudget memoryBudget) {
 
-        super(listener, name, capacity);
+        super(listener, name, capacity, waitStrategy, memoryBudget);
 
         this.workManager = ServiceContext.getWorkManager();
     }
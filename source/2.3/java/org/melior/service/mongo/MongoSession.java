@@ -7,6 +7,7 @@
         Service Harness
 */
 package org.melior.service.mongo;
+import java.util.Date;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
 
@@ -28,6 +29,12 @@ public class MongoSession {
 
     private long heartbeat;
 
+    private Date refreshed;
+
+    private int capacity;
+
+    private double throughput;
+
     /**
      * Constructor.
      */
@@ -103,4 +110,56 @@ public class MongoSession {
         this.heartbeat = heartbeat;
     }
 
+    /**
+     * Get date of last heartbeat.  The date is indexed with a time-to-live,
+     * so that the sessions which have been abandoned are eventually removed.
+     * @return The date of last heartbeat
+     */
+    public Date getRefreshed() {
+        return refreshed;
+    }
+
+    /**
+     * Set date of last heartbeat.
+     * @param refreshed The date of last heartbeat
+     */
+    public void setRefreshed(
+        final Date refreshed) {
+        this.refreshed = refreshed;
+    }
+
+    /**
+     * Get capacity.
+     * @return The number of threads which process the items of the session
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Set capacity.
+     * @param capacity The number of threads which process the items of the session
+     */
+    public void setCapacity(
+        final int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Get recent throughput.
+     * @return The recent throughput while busy, specified in items per second, or 0 if unknown
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Set recent throughput.
+     * @param throughput The recent throughput while busy, specified in items per second
+     */
+    public void setThroughput(
+        final double throughput) {
+        this.throughput = throughput;
+    }
+
 }
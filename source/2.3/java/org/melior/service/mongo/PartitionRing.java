@@ -0,0 +1,116 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Assigns the partitions of a partitioned collection to the live sessions
+ * of the collection by consistent hashing.  Each session is placed on a
+ * hash ring at a number of virtual positions, and each partition belongs
+ * to the session which follows the position of the partition on the ring.
+ * When a session joins or expires, only the partitions adjacent to its
+ * positions move to another session, so the assignment remains stable
+ * for the other sessions.
+ * <p>
+ * Every session computes the assignment independently from the same set of
+ * live sessions, so no coordination is required.  While the sessions have
+ * different views of the set of live sessions, a partition may briefly be
+ * assigned to two sessions, which is harmless as claims are atomic.
+ * @author Melior
+ * @since 2.3
+ * @see MongoListener
+ */
+class PartitionRing {
+
+    private static final int VIRTUAL_NODES = 64;
+
+    private TreeMap<Long, String> ring;
+
+    /**
+     * Constructor.
+     * @param sessionIds The identifiers of the live sessions
+     */
+    PartitionRing(
+        final Collection<String> sessionIds) {
+
+        super();
+
+        ring = new TreeMap<Long, String>();
+
+        for (String sessionId : sessionIds) {
+
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(sessionId + "#" + i), sessionId);
+            }
+
+        }
+
+    }
+
+    /**
+     * Get partitions which are assigned to session.
+     * @param sessionId The session identifier
+     * @param partitions The number of partitions
+     * @return The list of partitions which are assigned to the session
+     */
+    List<Integer> getPartitions(
+        final String sessionId,
+        final int partitions) {
+
+        List<Integer> assigned;
+        Map.Entry<Long, String> entry;
+
+        assigned = new ArrayList<Integer>();
+
+        if (ring.isEmpty() == true) {
+            return assigned;
+        }
+
+        for (int partition = 0; partition < partitions; partition++) {
+
+            entry = ring.ceilingEntry(hash("partition#" + partition));
+
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+
+            if (entry.getValue().equals(sessionId) == true) {
+                assigned.add(partition);
+            }
+
+        }
+
+        return assigned;
+    }
+
+    /**
+     * Get position of value on hash ring.
+     * @param value The value
+     * @return The position
+     */
+    private static long hash(
+        final String value) {
+
+        long hash;
+
+        hash = value.hashCode();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+}
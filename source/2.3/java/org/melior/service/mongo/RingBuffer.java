@@ -0,0 +1,333 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer ring buffer which is
+ * used to hand items from a {@code MongoListener} to its worker threads.
+ * <p>
+ * The slots of the ring buffer are allocated up front.  Each slot carries
+ * a sequence number which tells producers and consumers whether the slot
+ * is free or full for the current lap of the ring, so that a handoff only
+ * requires a single compare-and-set on the head or the tail.  Threads that
+ * find the ring buffer full or empty wait according to the configured
+ * {@code WaitStrategy} instead of blocking on a lock.  Threads which park
+ * are registered with the ring buffer, and a handoff unparks one of the
+ * threads which wait on the other side, so that the producers and consumers
+ * do not have to poll while the ring buffer stays full or empty.
+ * @author Melior
+ * @since 2.3
+ * @see WaitStrategy
+ */
+public class RingBuffer<E> {
+
+    private Object[] elements;
+
+    private AtomicLongArray sequences;
+
+    private int mask;
+
+    private AtomicLong head;
+
+    private AtomicLong tail;
+
+    private WaitStrategy waitStrategy;
+
+    private Queue<Thread> producers;
+
+    private Queue<Thread> consumers;
+
+    /**
+     * Constructor.
+     * @param capacity The capacity, which is rounded up to the next power of two
+     * @param waitStrategy The wait strategy
+     */
+    RingBuffer(
+        final int capacity,
+        final WaitStrategy waitStrategy) {
+
+        super();
+
+        mask = ((capacity <= 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1) - 1;
+
+        elements = new Object[mask + 1];
+
+        sequences = new AtomicLongArray(mask + 1);
+
+        for (int i = 0; i <= mask; i++) {
+            sequences.set(i, i);
+        }
+
+        head = new AtomicLong();
+
+        tail = new AtomicLong();
+
+        this.waitStrategy = waitStrategy;
+
+        producers = new ConcurrentLinkedQueue<Thread>();
+
+        consumers = new ConcurrentLinkedQueue<Thread>();
+    }
+
+    /**
+     * Add element to ring buffer.  Waits while the ring buffer is full.
+     * @param element The element
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    public void add(
+        final E element) throws InterruptedException {
+
+        for (int attempt = 0; offer(element) == false; attempt = waitStrategy.next(attempt)) {
+            idle(producers, () -> size() < capacity(), attempt);
+        }
+
+    }
+
+    /**
+     * Add element to ring buffer.  Waits while the ring buffer is full, for as
+     * long as the condition holds, so that a producer which waits on a full
+     * ring buffer may be stopped.
+     * @param element The element
+     * @param condition The condition under which to wait
+     * @return true if the element was added, false if the condition no longer holds
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    public boolean add(
+        final E element,
+        final BooleanSupplier condition) throws InterruptedException {
+
+        for (int attempt = 0; offer(element) == false; attempt = waitStrategy.next(attempt)) {
+
+            if (condition.getAsBoolean() == false) {
+                return false;
+            }
+
+            idle(producers, () -> size() < capacity(), attempt);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove element from ring buffer.  Waits while the ring buffer is empty.
+     * @return The element
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    public E remove() throws InterruptedException {
+
+        E element;
+
+        for (int attempt = 0; (element = poll()) == null; attempt = waitStrategy.next(attempt)) {
+            idle(consumers, () -> size() > 0, attempt);
+        }
+
+        return element;
+    }
+
+    /**
+     * Remove element from ring buffer.  Waits while the ring buffer is empty,
+     * for as long as the condition holds, so that a consumer which waits on
+     * an empty ring buffer may be stopped.
+     * @param condition The condition under which to wait
+     * @return The element, or null if the condition no longer holds
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    public E remove(
+        final BooleanSupplier condition) throws InterruptedException {
+
+        E element;
+
+        for (int attempt = 0; (element = poll()) == null; attempt = waitStrategy.next(attempt)) {
+
+            if (condition.getAsBoolean() == false) {
+                return null;
+            }
+
+            idle(consumers, () -> size() > 0, attempt);
+        }
+
+        return element;
+    }
+
+    /**
+     * Add element to ring buffer, if the ring buffer is not full.
+     * @param element The element
+     * @return true if the element was added, false if the ring buffer is full
+     */
+    public boolean offer(
+        final E element) {
+
+        long position;
+        int index;
+        long difference;
+
+        position = tail.get();
+
+        while (true) {
+
+            index = (int) (position & mask);
+            difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+
+                if (tail.compareAndSet(position, position + 1) == true) {
+
+                    elements[index] = element;
+                    sequences.lazySet(index, position + 1);
+
+                    signal(consumers);
+
+                    return true;
+                }
+
+                position = tail.get();
+            }
+            else if (difference < 0) {
+
+                return false;
+            }
+            else {
+
+                position = tail.get();
+            }
+
+        }
+
+    }
+
+    /**
+     * Remove element from ring buffer, if the ring buffer is not empty.
+     * @return The element, or null if the ring buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+
+        long position;
+        int index;
+        long difference;
+        E element;
+
+        position = head.get();
+
+        while (true) {
+
+            index = (int) (position & mask);
+            difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+
+                if (head.compareAndSet(position, position + 1) == true) {
+
+                    element = (E) elements[index];
+                    elements[index] = null;
+                    sequences.lazySet(index, position + mask + 1);
+
+                    signal(producers);
+
+                    return element;
+                }
+
+                position = head.get();
+            }
+            else if (difference < 0) {
+
+                return null;
+            }
+            else {
+
+                position = head.get();
+            }
+
+        }
+
+    }
+
+    /**
+     * Get number of elements in ring buffer.  The number is approximate
+     * while producers or consumers are active.
+     * @return The number of elements
+     */
+    public int size() {
+        return (int) Math.max(0, Math.min(tail.get() - head.get(), mask + 1));
+    }
+
+    /**
+     * Get capacity of ring buffer.
+     * @return The capacity
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Wait before the next attempt.  If the thread parks, then it is registered
+     * with the waiters before it checks once more whether the ring buffer has
+     * become available, so that a signal which arrives in the meantime is not
+     * lost.
+     * @param waiters The threads which wait on the same side of the ring buffer
+     * @param available The check whether the ring buffer has become available
+     * @param attempt The number of attempts that have failed so far
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    private void idle(
+        final Queue<Thread> waiters,
+        final BooleanSupplier available,
+        final int attempt) throws InterruptedException {
+
+        if (waitStrategy.isParking(attempt) == false) {
+
+            waitStrategy.idle(attempt);
+
+            return;
+        }
+
+        waiters.add(Thread.currentThread());
+
+        try {
+
+            if (available.getAsBoolean() == false) {
+                waitStrategy.idle(attempt);
+            }
+
+        }
+        finally {
+
+            waiters.remove(Thread.currentThread());
+        }
+
+    }
+
+    /**
+     * Unpark one of the threads which wait on a side of the ring buffer.
+     * @param waiters The threads which wait on the side of the ring buffer
+     */
+    private void signal(
+        final Queue<Thread> waiters) {
+
+        Thread waiter;
+
+        if (waiters.isEmpty() == true) {
+            return;
+        }
+
+        waiter = waiters.poll();
+
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+
+    }
+
+}
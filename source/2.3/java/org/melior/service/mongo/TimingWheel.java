@@ -0,0 +1,348 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel which holds elements until they are due, with
+ * millisecond precision.  The wheel has several levels of 64 slots each.  The
+ * slots of the lowest level span one millisecond each, and the slots of every
+ * higher level span a full rotation of the level below it.  An element is
+ * placed in the lowest level whose rotation contains its due time, and is
+ * moved down a level whenever the wheel enters the slot which holds it, so
+ * that adding and dispatching elements costs constant time regardless of the
+ * number of elements in the wheel.  Elements which are due beyond the highest
+ * level are held in an overflow list until the highest level rotates.
+ * <p>
+ * Threads which take elements from the wheel sleep exactly until the next
+ * slot which holds elements, and are woken when an element is added.
+ * @author Melior
+ * @since 2.3
+ * @see MongoListener
+ */
+class TimingWheel<E> {
+
+    private static final int BITS = 6;
+
+    private static final int SLOTS = 1 << BITS;
+
+    private static final int MASK = SLOTS - 1;
+
+    private static final int LEVELS = 4;
+
+    private List<Entry<E>>[][] slots;
+
+    private List<Entry<E>> overflow;
+
+    private long current;
+
+    private int size;
+
+    /**
+     * Constructor.
+     */
+    TimingWheel() {
+
+        super();
+
+        @SuppressWarnings("unchecked")
+        List<Entry<E>>[][] newSlots = (List<Entry<E>>[][]) new List<?>[LEVELS][SLOTS];
+
+        slots = newSlots;
+
+        overflow = new ArrayList<Entry<E>>();
+
+        current = System.currentTimeMillis();
+    }
+
+    /**
+     * Add element to wheel.
+     * @param element The element
+     * @param due The time at which the element is due, specified in milliseconds
+     * @return true if the element was added, false if the element is already due
+     */
+    synchronized boolean add(
+        final E element,
+        final long due) {
+
+        if (due < current) {
+            return false;
+        }
+
+        place(new Entry<E>(element, due));
+
+        notifyAll();
+
+        return true;
+    }
+
+    /**
+     * Take elements which are due from wheel.  Waits until elements are due,
+     * or until the timeout expires.
+     * @param timeout The timeout, specified in milliseconds
+     * @return The list of elements which are due, which is empty if the timeout expired
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    synchronized List<E> take(
+        final long timeout) throws InterruptedException {
+
+        List<E> elements;
+        long deadline;
+        long now;
+
+        elements = new ArrayList<E>();
+
+        deadline = System.currentTimeMillis() + timeout;
+
+        now = System.currentTimeMillis();
+
+        advance(now, elements);
+
+        while ((elements.isEmpty() == true) && (now < deadline)) {
+
+            wait(Math.max(1, Math.min(getNextDue(), deadline) - now));
+
+            now = System.currentTimeMillis();
+
+            advance(now, elements);
+        }
+
+        return elements;
+    }
+
+    /**
+     * Remove all elements from wheel.
+     * @return The list of elements which were removed
+     */
+    synchronized List<E> clear() {
+
+        List<E> elements;
+
+        elements = new ArrayList<E>(size);
+
+        for (int level = 0; level < LEVELS; level++) {
+
+            for (int slot = 0; slot < SLOTS; slot++) {
+
+                if (slots[level][slot] != null) {
+
+                    for (Entry<E> entry : slots[level][slot]) {
+                        elements.add(entry.element);
+                    }
+
+                    slots[level][slot] = null;
+                }
+
+            }
+
+        }
+
+        for (Entry<E> entry : overflow) {
+            elements.add(entry.element);
+        }
+
+        overflow.clear();
+
+        size = 0;
+
+        notifyAll();
+
+        return elements;
+    }
+
+    /**
+     * Get number of elements in wheel.
+     * @return The number of elements
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Advance wheel to given time.  Moves the elements of every slot which the
+     * wheel enters down a level, and collects the elements which are due.
+     * @param now The time to advance to, specified in milliseconds
+     * @param elements The list to which to add the elements which are due
+     */
+    private void advance(
+        final long now,
+        final List<E> elements) {
+
+        List<Entry<E>> entries;
+
+        while (current <= now) {
+
+            if (size == 0) {
+                current = now + 1;
+
+                break;
+            }
+
+            if ((current & ((1L << (BITS * LEVELS)) - 1)) == 0) {
+
+                entries = new ArrayList<Entry<E>>(overflow);
+                overflow.clear();
+                size -= entries.size();
+
+                for (Entry<E> entry : entries) {
+                    place(entry);
+                }
+
+            }
+
+            for (int level = LEVELS - 1; level > 0; level--) {
+
+                if ((current & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level);
+                }
+
+            }
+
+            entries = slots[0][(int) (current & MASK)];
+
+            if (entries != null) {
+
+                for (Entry<E> entry : entries) {
+                    elements.add(entry.element);
+                }
+
+                size -= entries.size();
+
+                slots[0][(int) (current & MASK)] = null;
+            }
+
+            current++;
+        }
+
+    }
+
+    /**
+     * Move elements of the slot which the wheel enters at given level down to
+     * the lower levels.
+     * @param level The level
+     */
+    private void cascade(
+        final int level) {
+
+        List<Entry<E>> entries;
+        int slot;
+
+        slot = (int) ((current >> (BITS * level)) & MASK);
+
+        entries = slots[level][slot];
+
+        if (entries == null) {
+            return;
+        }
+
+        slots[level][slot] = null;
+
+        size -= entries.size();
+
+        for (Entry<E> entry : entries) {
+            place(entry);
+        }
+
+    }
+
+    /**
+     * Place entry in the lowest level whose current rotation contains the due
+     * time of the entry, or in the overflow list if no level contains it.
+     * @param entry The entry
+     */
+    private void place(
+        final Entry<E> entry) {
+
+        int shift;
+        int slot;
+
+        size++;
+
+        for (int level = 0; level < LEVELS; level++) {
+
+            shift = BITS * level;
+
+            if ((entry.due >> (shift + BITS)) == (current >> (shift + BITS))) {
+
+                slot = (int) ((entry.due >> shift) & MASK);
+
+                if (slots[level][slot] == null) {
+                    slots[level][slot] = new ArrayList<Entry<E>>();
+                }
+
+                slots[level][slot].add(entry);
+
+                return;
+            }
+
+        }
+
+        overflow.add(entry);
+    }
+
+    /**
+     * Get time of next slot which holds elements.  In the lowest level this is
+     * the time at which the elements are due, and in the higher levels this is
+     * the time at which the elements are moved down a level.
+     * @return The time of the next slot, specified in milliseconds, or {@code Long.MAX_VALUE} if the wheel is empty
+     */
+    private long getNextDue() {
+
+        int shift;
+
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        for (int level = 0; level < LEVELS; level++) {
+
+            shift = BITS * level;
+
+            for (int slot = (int) ((current >> shift) & MASK) + ((level == 0) ? 0 : 1); slot < SLOTS; slot++) {
+
+                if ((slots[level][slot] != null) && (slots[level][slot].isEmpty() == false)) {
+                    return ((current >> (shift + BITS)) << (shift + BITS)) + ((long) slot << shift);
+                }
+
+            }
+
+        }
+
+        return ((current >> (BITS * LEVELS)) + 1) << (BITS * LEVELS);
+    }
+
+    /**
+     * An element in the wheel, with the time at which it is due.
+     */
+    private static class Entry<E> {
+
+        private E element;
+
+        private long due;
+
+        /**
+         * Constructor.
+         * @param element The element
+         * @param due The time at which the element is due, specified in milliseconds
+         */
+        Entry(
+            final E element,
+            final long due) {
+
+            super();
+
+            this.element = element;
+
+            this.due = due;
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+/* __  __      _ _            
+  |  \/  |    | (_)           
+  | \  / | ___| |_  ___  _ __ 
+  | |\/| |/ _ \ | |/ _ \| '__|
+  | |  | |  __/ | | (_) | |   
+  |_|  |_|\___|_|_|\___/|_|   
+        Service Harness
+*/
+package org.melior.service.mongo;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The strategy which a thread uses to wait for a {@code RingBuffer} to become
+ * available, when the ring buffer is full or empty.
+ * <p>
+ * {@code SPIN} busy-waits and offers the lowest handoff latency at the cost of
+ * a full CPU core per waiting thread.  {@code YIELD} busy-waits briefly and then
+ * yields the CPU to other threads between attempts.  {@code PARK} busy-waits and
+ * yields briefly and then parks the thread until the ring buffer signals that
+ * it has become available, which keeps idle threads free.  A parked thread
+ * also wakes up periodically, so that it may notice that it must stop.
+ * @author Melior
+ * @since 2.3
+ * @see RingBuffer
+ */
+public enum WaitStrategy {
+    SPIN,
+    YIELD,
+    PARK;
+
+    private static final int SPIN_ATTEMPTS = 100;
+
+    private static final int YIELD_ATTEMPTS = 200;
+
+    private static final long MAXIMUM_PARK = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Get number of attempts that have failed so far, after another attempt
+     * has failed.  The number is capped once the thread has reached its final
+     * way of waiting, so that it does not overflow however long it waits.
+     * @param attempt The number of attempts that had failed before
+     * @return The number of attempts that have failed so far
+     */
+    int next(
+        final int attempt) {
+        return Math.min(attempt + 1, YIELD_ATTEMPTS);
+    }
+
+    /**
+     * Determine whether the thread parks on the next attempt, in which case
+     * it must be signalled when the ring buffer becomes available.
+     * @param attempt The number of attempts that have failed so far
+     * @return true if the thread parks, false otherwise
+     */
+    boolean isParking(
+        final int attempt) {
+        return (this == PARK) && (attempt >= YIELD_ATTEMPTS);
+    }
+
+    /**
+     * Wait before the next attempt.
+     * @param attempt The number of attempts that have failed so far
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    void idle(
+        final int attempt) throws InterruptedException {
+
+        if (Thread.interrupted() == true) {
+            throw new InterruptedException();
+        }
+
+        if ((this == SPIN) || (attempt < SPIN_ATTEMPTS)) {
+            return;
+        }
+
+        if ((this == YIELD) || (attempt < YIELD_ATTEMPTS)) {
+
+            Thread.yield();
+
+            return;
+        }
+
+        LockSupport.parkNanos(MAXIMUM_PARK);
+    }
+
+}